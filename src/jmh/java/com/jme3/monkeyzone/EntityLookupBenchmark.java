@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.monkeyzone;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.physicssync.PhysicsSyncManager;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the entity and sync object lookups that run for every ray test,
+ * trigger overlap and shot with a world of up to 5000 entities. The time per
+ * lookup should not grow with the number of entities. Run with
+ * "gradlew jmh".
+ * @author normenhansen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityLookupBenchmark {
+
+    @Param({"500", "5000"})
+    public int entityCount;
+    private BulletAppState bulletAppState;
+    private WorldManager worldManager;
+    private PhysicsSyncManager syncManager;
+    private Spatial[] entities;
+    private long[] entityIds;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        Logger.getLogger(WorldManager.class.getName()).setLevel(Level.WARNING);
+        //an application that is never started, models are empty nodes
+        final AssetManager models = new DesktopAssetManager() {
+
+            @Override
+            public Spatial loadModel(String name) {
+                return new Node(name);
+            }
+        };
+        SimpleApplication app = new SimpleApplication() {
+
+            @Override
+            public void simpleInitApp() {
+            }
+
+            @Override
+            public AssetManager getAssetManager() {
+                return models;
+            }
+        };
+        bulletAppState = new BulletAppState();
+        bulletAppState.startPhysics();
+        syncManager = new PhysicsSyncManager(app, (com.jme3.network.Server) null);
+        app.getStateManager().attach(bulletAppState);
+        app.getStateManager().attach(syncManager);
+        worldManager = new WorldManager(app, new Node("Root"));
+        worldManager.loadLevel("Scenes/Level");
+        entities = new Spatial[entityCount];
+        entityIds = new long[entityCount];
+        for (int i = 0; i < entityCount; i++) {
+            entityIds[i] = worldManager.addNewEntity("Models/Entity", new Vector3f(i, 0, 0), new Quaternion());
+            entities[i] = worldManager.getEntity(entityIds[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        bulletAppState.getPhysicsSpace().destroy();
+    }
+
+    private int nextIndex() {
+        next = next + 1 == entityCount ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public long getEntityId() {
+        return worldManager.getEntityId(entities[nextIndex()]);
+    }
+
+    @Benchmark
+    public Spatial getEntity() {
+        return worldManager.getEntity(entityIds[nextIndex()]);
+    }
+
+    @Benchmark
+    public void removeAndAddSyncObject() {
+        int index = nextIndex();
+        syncManager.removeObject(entities[index]);
+        syncManager.addObject(entityIds[index], entities[index]);
+    }
+}
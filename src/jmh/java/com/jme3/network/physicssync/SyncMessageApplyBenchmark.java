@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.Client;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares one client frame of the PhysicsSyncManager with the boxed
+ * HashSet and HashMap it replaced. Each frame the states of two sync ticks
+ * for batchSize objects are due, like after unpacking two batches, so the
+ * older state of each object is dropped and the newer one is applied. The
+ * LongMap version enqueues the messages and runs update(), which
+ * deduplicates and applies them in doDueMessages(). All ids carry a
+ * generation so they are outside of the Long cache and every boxed id
+ * allocates. The gc profiler set in build.gradle reports the allocation per
+ * frame as gc.alloc.rate.norm.
+ * @author normenhansen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncMessageApplyBenchmark {
+
+    private static final int TICKS = 2;
+    private static final float FRAME_TIME = 0.5f;
+    @Param({"5000"})
+    public int objectCount;
+    @Param({"24"})
+    public int batchSize;
+    private PhysicsSyncManager syncManager;
+    private HashMap<Long, Object> boxedObjects;
+    private HashSet<Long> boxedDueIds;
+    private ApplyMessage[] messages;
+    private int next = 0;
+    private double frameTime = 0;
+
+    @Setup
+    public void setUp() {
+        syncManager = new PhysicsSyncManager(null, createClient());
+        boxedObjects = new HashMap<Long, Object>();
+        boxedDueIds = new HashSet<Long>();
+        messages = new ApplyMessage[objectCount * TICKS];
+        IdAllocator idAllocator = new IdAllocator();
+        for (int i = 0; i < objectCount; i++) {
+            long id = idAllocator.allocate();
+            int[] object = new int[1];
+            syncManager.addObject(id, object);
+            boxedObjects.put(id, object);
+            for (int tick = 0; tick < TICKS; tick++) {
+                messages[i * TICKS + tick] = new ApplyMessage(id);
+            }
+        }
+    }
+
+    /**
+     * sets the time stamps of the messages due in the next frame, ordered
+     * by tick like the batches arrive
+     * @return the index of the first object of the frame
+     */
+    private int nextFrame() {
+        int first = next;
+        next = next + batchSize > objectCount - batchSize ? 0 : next + batchSize;
+        frameTime += FRAME_TIME;
+        for (int tick = 0; tick < TICKS; tick++) {
+            for (int i = first; i < first + batchSize; i++) {
+                messages[i * TICKS + tick].time = frameTime + tick * FRAME_TIME / TICKS;
+            }
+        }
+        return first;
+    }
+
+    @Benchmark
+    public void applyLongMap() {
+        int first = nextFrame();
+        for (int tick = 0; tick < TICKS; tick++) {
+            for (int i = first; i < first + batchSize; i++) {
+                syncManager.enqueueMessage(messages[i * TICKS + tick]);
+            }
+        }
+        syncManager.update(FRAME_TIME);
+    }
+
+    @Benchmark
+    public void applyBoxedHashMap() {
+        int first = nextFrame();
+        //newest first, like doDueMessages()
+        for (int tick = TICKS - 1; tick >= 0; tick--) {
+            for (int i = first; i < first + batchSize; i++) {
+                ApplyMessage message = messages[i * TICKS + tick];
+                if (boxedDueIds.add(message.syncId)) {
+                    Object object = boxedObjects.get(message.syncId);
+                    if (object != null) {
+                        message.applyData(object);
+                    }
+                }
+            }
+        }
+        boxedDueIds.clear();
+    }
+
+    /**
+     * a client that is never used, the sync manager only needs one to run
+     * its client path
+     */
+    private static Client createClient() {
+        return (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class}, new InvocationHandler() {
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * rigid body state message that counts how often it was applied to its
+     * object instead of moving a physics body
+     */
+    private static class ApplyMessage extends SyncRigidBodyMessage {
+
+        ApplyMessage(long id) {
+            this.syncId = id;
+        }
+
+        @Override
+        public void applyData(Object object) {
+            ((int[]) object)[0]++;
+        }
+    }
+}
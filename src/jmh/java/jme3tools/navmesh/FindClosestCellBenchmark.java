@@ -0,0 +1,66 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures findClosestCell on the NavMesh of the MonkeyZone scene for random
+ * points in the scene against a scan over all cells.
+ *
+ * @author normenhansen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindClosestCellBenchmark {
+
+    private NavMesh navMesh;
+    private Vector3f[] points;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        SceneNavMesh scene = new SceneNavMesh();
+        navMesh = scene.getNavMesh();
+        points = scene.createPoints(1024, 1);
+    }
+
+    private Vector3f nextPoint() {
+        next = (next + 1) & 1023;
+        return points[next];
+    }
+
+    @Benchmark
+    public Cell cellGrid() {
+        return navMesh.findClosestCell(nextPoint());
+    }
+
+    @Benchmark
+    public Cell scanAllCells() {
+        Vector3f point = nextPoint();
+        Cell closest = null;
+        float closestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            Cell cell = navMesh.getCell(i);
+            float distance = cell.distanceSquared(point.x, point.y, point.z);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closest = cell;
+            }
+        }
+        return closest;
+    }
+}
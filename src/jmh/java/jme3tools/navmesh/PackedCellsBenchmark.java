@@ -0,0 +1,286 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the query throughput of A* and of the closest cell scan on a grid
+ * of quads when the cells are read from the PackedCells arrays against the
+ * same queries walking the Cell objects. The corridor cache is off so every
+ * query runs A*, aStarPackedCells also includes the cache lookup and building
+ * the Corridor while the search on the Cell objects only returns the cost.
+ *
+ * @author normenhansen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedCellsBenchmark {
+
+    private static final int QUERIES = 256;
+    /**
+     * quads per side of the grid, each quad has two cells
+     */
+    @Param({"32", "128"})
+    public int gridSize;
+    private NavMesh navMesh;
+    private PackedCells packedCells;
+    private Cell[] cells;
+    private Vector3f[] points;
+    private Cell[] pointCells;
+    private final CellObjectSearch search = new CellObjectSearch();
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        navMesh = new NavMesh();
+        addQuads(navMesh, gridSize);
+        navMesh.linkCells();
+        navMesh.getCorridorCache().setMaxSize(0);
+        List<Cell> cellList = new ArrayList<Cell>();
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            cellList.add(navMesh.getCell(i));
+        }
+        cells = cellList.toArray(new Cell[cellList.size()]);
+        packedCells = new PackedCells(cellList);
+        Random random = new Random(1);
+        points = new Vector3f[QUERIES];
+        pointCells = new Cell[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            points[i] = new Vector3f(random.nextFloat() * gridSize * 2, 0, random.nextFloat() * gridSize * 2);
+            pointCells[i] = navMesh.findClosestCell(points[i]);
+        }
+        //both searches have to find corridors of the same cost
+        for (int i = 0; i < QUERIES; i++) {
+            int end = (i + 1) % QUERIES;
+            Corridor corridor = navMesh.findCorridor(pointCells[i], points[i], pointCells[end], 0);
+            float cost = search.findPath(cells, pointCells[i], points[i], pointCells[end]);
+            if (corridor == null || Math.abs(getCost(corridor) - cost) > 1.0e-3f * cost) {
+                throw new IllegalStateException("Searches differ for query " + i);
+            }
+        }
+    }
+
+    private int nextQuery() {
+        next = (next + 1) % QUERIES;
+        return next;
+    }
+
+    @Benchmark
+    public Corridor aStarPackedCells() {
+        int start = nextQuery();
+        int end = (start + 1) % QUERIES;
+        return navMesh.findCorridor(pointCells[start], points[start], pointCells[end], 0);
+    }
+
+    @Benchmark
+    public float aStarCellObjects() {
+        int start = nextQuery();
+        int end = (start + 1) % QUERIES;
+        return search.findPath(cells, pointCells[start], points[start], pointCells[end]);
+    }
+
+    @Benchmark
+    public int closestCellScanPackedCells() {
+        Vector3f point = points[nextQuery()];
+        int closest = -1;
+        float closestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < packedCells.getCellCount(); i++) {
+            float distance = packedCells.distanceSquared(i, point.x, point.y, point.z);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+
+    @Benchmark
+    public Cell closestCellScanCellObjects() {
+        Vector3f point = points[nextQuery()];
+        Cell closest = null;
+        float closestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < cells.length; i++) {
+            float distance = cells[i].distanceSquared(point.x, point.y, point.z);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closest = cells[i];
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return the A* cost of the corridor, the wall lengths along the cells
+     */
+    private static float getCost(Corridor corridor) {
+        float cost = 0;
+        for (int i = corridor.size() - 2; i >= 0; i--) {
+            Cell cell = corridor.getCell(i + 1);
+            int entry = getSide(cell, corridor.getCell(i));
+            //the search starts at the goal cell with arrival wall 0
+            int exit = i + 2 < corridor.size() ? getSide(cell, corridor.getCell(i + 2)) : 0;
+            cost += cell.getWallLength(Math.abs(entry - exit));
+        }
+        return cost;
+    }
+
+    private static int getSide(Cell cell, Cell link) {
+        for (int side = 0; side < 3; side++) {
+            if (cell.getLink(side) == link) {
+                return side;
+            }
+        }
+        return 0;
+    }
+
+    static void addQuads(NavMesh mesh, int gridSize) {
+        for (int x = 0; x < gridSize; x++) {
+            for (int z = 0; z < gridSize; z++) {
+                Vector3f p00 = new Vector3f(x * 2, 0, z * 2);
+                Vector3f p10 = new Vector3f(x * 2 + 2, 0, z * 2);
+                Vector3f p01 = new Vector3f(x * 2, 0, z * 2 + 2);
+                Vector3f p11 = new Vector3f(x * 2 + 2, 0, z * 2 + 2);
+                //vertices in the clockwise order the NavMesh expects
+                mesh.addCell(p00, p01, p10);
+                mesh.addCell(p10, p01, p11);
+            }
+        }
+    }
+
+    /**
+     * The A* search of NavMesh and Heap, with the same reverse search, costs
+     * and binary heap, but reading the links, wall lengths and centers from
+     * the Cell objects.
+     */
+    static class CellObjectSearch {
+
+        private int[] heap = new int[64];
+        private float[] heapCosts = new float[64];
+        private int size;
+        private int sessionID;
+        private int[] sessionIDs = new int[0];
+        private float[] arrivalCosts = new float[0];
+        private float[] heuristics = new float[0];
+        private int[] arrivalWalls = new int[0];
+        private boolean[] open = new boolean[0];
+        private int[] heapIndices = new int[0];
+
+        /**
+         * @return the cost of the path from the start to the end cell or -1
+         */
+        float findPath(Cell[] cells, Cell startCell, Vector3f startPos, Cell endCell) {
+            if (sessionIDs.length != cells.length) {
+                sessionIDs = new int[cells.length];
+                arrivalCosts = new float[cells.length];
+                heuristics = new float[cells.length];
+                arrivalWalls = new int[cells.length];
+                open = new boolean[cells.length];
+                heapIndices = new int[cells.length];
+            }
+            sessionID++;
+            size = 0;
+            query(endCell, null, 0, startPos);
+            while (size > 0) {
+                Cell top = cells[pop()];
+                if (top == startCell) {
+                    return arrivalCosts[top.getIndex()];
+                }
+                int index = top.getIndex();
+                open[index] = false;
+                for (int i = 0; i < 3; i++) {
+                    Cell link = top.getLink(i);
+                    if (link != null) {
+                        query(link, top, arrivalCosts[index]
+                                + top.getWallLength(Math.abs(i - arrivalWalls[index])), startPos);
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private void query(Cell cell, Cell caller, float arrivalCost, Vector3f goal) {
+            int index = cell.getIndex();
+            if (sessionIDs[index] != sessionID) {
+                sessionIDs[index] = sessionID;
+                open[index] = caller != null;
+                heuristics[index] = caller != null ? cell.getCenter().distance(goal) : 0;
+                arrivalCosts[index] = arrivalCost;
+                arrivalWalls[index] = caller != null ? getSide(cell, caller) : 0;
+                if (size == heap.length) {
+                    int[] newHeap = new int[size * 2];
+                    float[] newCosts = new float[size * 2];
+                    System.arraycopy(heap, 0, newHeap, 0, size);
+                    System.arraycopy(heapCosts, 0, newCosts, 0, size);
+                    heap = newHeap;
+                    heapCosts = newCosts;
+                }
+                siftUp(index, arrivalCost + heuristics[index], size++);
+            } else if (open[index] && arrivalCost < arrivalCosts[index]) {
+                arrivalCosts[index] = arrivalCost;
+                arrivalWalls[index] = getSide(cell, caller);
+                siftUp(index, arrivalCost + heuristics[index], heapIndices[index]);
+            }
+        }
+
+        private int pop() {
+            int top = heap[0];
+            size--;
+            if (size > 0) {
+                siftDown(heap[size], heapCosts[size], 0);
+            }
+            return top;
+        }
+
+        private void siftUp(int cell, float cost, int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heapCosts[parent] <= cost) {
+                    break;
+                }
+                place(heap[parent], heapCosts[parent], index);
+                index = parent;
+            }
+            place(cell, cost, index);
+        }
+
+        private void siftDown(int cell, float cost, int index) {
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && heapCosts[child + 1] < heapCosts[child]) {
+                    child++;
+                }
+                if (cost <= heapCosts[child]) {
+                    break;
+                }
+                place(heap[child], heapCosts[child], index);
+                index = child;
+            }
+            place(cell, cost, index);
+        }
+
+        private void place(int cell, float cost, int index) {
+            heap[index] = cell;
+            heapCosts[index] = cost;
+            heapIndices[cell] = index;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package jme3tools.navmesh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Reports the retained memory per cell of the Cell objects of a NavMesh and
+ * of the PackedCells built from them, measured with JOL by walking the
+ * object graphs. PackedCells keeps the Cell objects for the results of the
+ * queries, so its arrays come on top of the Cell objects. The sizes are
+ * reported as the cellObjectsBytes and packedCellsBytes counters, the
+ * time of the benchmark is the time to walk the graphs and has no meaning.
+ *
+ * @author normenhansen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(1)
+public class PackedCellsMemoryBenchmark {
+
+    /**
+     * quads per side of the grid, each quad has two cells
+     */
+    @Param({"64"})
+    public int gridSize;
+    private List<Cell> cellList;
+    private PackedCells packedCells;
+
+    @Setup
+    public void setUp() {
+        NavMesh navMesh = new NavMesh();
+        PackedCellsBenchmark.addQuads(navMesh, gridSize);
+        navMesh.linkCells();
+        cellList = new ArrayList<Cell>();
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            cellList.add(navMesh.getCell(i));
+        }
+        packedCells = new PackedCells(cellList);
+    }
+
+    /**
+     * retained bytes per cell, the counters are set once per iteration
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedBytes {
+
+        public double cellObjectsBytes;
+        public double packedCellsBytes;
+    }
+
+    @Benchmark
+    public void retainedSize(RetainedBytes bytes) {
+        int count = cellList.size();
+        long cells = GraphLayout.parseInstance(cellList.toArray()).totalSize();
+        long all = GraphLayout.parseInstance(cellList.toArray(), packedCells).totalSize();
+        bytes.cellObjectsBytes = (double) cells / count;
+        bytes.packedCellsBytes = (double) (all - cells) / count;
+    }
+}
@@ -0,0 +1,69 @@
+package jme3tools.navmesh;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import jme3tools.navmesh.util.NavMeshGenerator;
+import jme3tools.optimize.GeometryBatchFactory;
+
+/**
+ * Creates the NavMesh of the MonkeyZone scene for the benchmarks the same way
+ * WorldManager.createNavMesh() does, and random points within the scene.
+ *
+ * @author normenhansen
+ */
+class SceneNavMesh {
+
+    static final String SCENE = "Scenes/MonkeyZone.j3o";
+    private final NavMesh navMesh = new NavMesh();
+    private final BoundingBox bounds;
+
+    SceneNavMesh() {
+        AssetManager assetManager = new DesktopAssetManager(true);
+        Node scene = (Node) assetManager.loadModel(SCENE);
+        Mesh mesh = new Mesh();
+        GeometryBatchFactory.mergeGeometries(findGeometries(scene, new LinkedList<Geometry>()), mesh);
+        navMesh.loadFromMesh(new NavMeshGenerator().optimize(mesh));
+        scene.updateGeometricState();
+        bounds = (BoundingBox) scene.getWorldBound();
+    }
+
+    NavMesh getNavMesh() {
+        return navMesh;
+    }
+
+    /**
+     * @return random points within the bounds of the scene
+     */
+    Vector3f[] createPoints(int count, long seed) {
+        Random random = new Random(seed);
+        Vector3f min = bounds.getMin(null);
+        Vector3f max = bounds.getMax(null);
+        Vector3f[] points = new Vector3f[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = new Vector3f(min.x + random.nextFloat() * (max.x - min.x),
+                    min.y + random.nextFloat() * (max.y - min.y),
+                    min.z + random.nextFloat() * (max.z - min.z));
+        }
+        return points;
+    }
+
+    private static List<Geometry> findGeometries(Node node, List<Geometry> geoms) {
+        for (Spatial spatial : node.getChildren()) {
+            if (spatial instanceof Geometry) {
+                geoms.add((Geometry) spatial);
+            } else if (spatial instanceof Node) {
+                findGeometries((Node) spatial, geoms);
+            }
+        }
+        return geoms;
+    }
+}
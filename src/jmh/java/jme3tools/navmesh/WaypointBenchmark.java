@@ -0,0 +1,75 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the waypoint generation of the funnel for a corridor of 200 cells
+ * along a staircase of quads, the A* search is done once in the setup.
+ *
+ * @author normenhansen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaypointBenchmark {
+
+    private static final int CORRIDOR_CELLS = 200;
+    @Param({"0", "0.5"})
+    public float entityRadius;
+    private NavMesh navMesh;
+    private Corridor corridor;
+    private Vector3f startPos;
+    private Vector3f endPos;
+    private final Funnel funnel = new Funnel();
+    private final Path path = new Path();
+
+    @Setup
+    public void setUp() {
+        //each step of the staircase is one quad to the right and one up
+        navMesh = new NavMesh();
+        int steps = CORRIDOR_CELLS / 4;
+        for (int i = 0; i < steps; i++) {
+            addQuad(navMesh, i, i);
+            addQuad(navMesh, i + 1, i);
+        }
+        navMesh.linkCells();
+        startPos = new Vector3f(0.5f, 0, 0.5f);
+        endPos = new Vector3f(steps * 2 + 1.5f, 0, (steps - 1) * 2 + 1.5f);
+        corridor = navMesh.findCorridor(navMesh.findClosestCell(startPos), startPos,
+                navMesh.findClosestCell(endPos), entityRadius);
+        if (corridor == null || corridor.size() != CORRIDOR_CELLS) {
+            throw new IllegalStateException("Corridor has " + (corridor == null ? 0 : corridor.size()) + " cells");
+        }
+    }
+
+    @Benchmark
+    public Path buildWaypoints() {
+        funnel.buildPath(navMesh, path, corridor, startPos, endPos, entityRadius);
+        return path;
+    }
+
+    private static void addQuad(NavMesh mesh, int x, int z) {
+        Vector3f p00 = new Vector3f(x * 2, 0, z * 2);
+        Vector3f p10 = new Vector3f(x * 2 + 2, 0, z * 2);
+        Vector3f p01 = new Vector3f(x * 2, 0, z * 2 + 2);
+        Vector3f p11 = new Vector3f(x * 2 + 2, 0, z * 2 + 2);
+        //vertices in the clockwise order the NavMesh expects
+        mesh.addCell(p00, p01, p10);
+        mesh.addCell(p10, p01, p11);
+    }
+}
@@ -52,8 +52,10 @@ import com.jme3.monkeyzone.messages.ServerRemovePlayerMessage;
 import com.jme3.monkeyzone.messages.StartGameMessage;
 import com.jme3.network.Network;
 import com.jme3.network.NetworkClient;
+import com.jme3.network.physicssync.PhysicsSyncBatchMessage;
 import com.jme3.network.physicssync.PhysicsSyncManager;
 import com.jme3.network.physicssync.SyncCharacterMessage;
+import com.jme3.network.physicssync.SyncDeltaMessage;
 import com.jme3.network.physicssync.SyncRigidBodyMessage;
 import com.jme3.niftygui.NiftyJmeDisplay;
 import com.jme3.renderer.RenderManager;
@@ -135,11 +137,14 @@ public class ClientMain extends SimpleApplication implements ScreenController {
 
         syncManager = new PhysicsSyncManager(app, client);
         syncManager.setMaxDelay(Globals.NETWORK_MAX_PHYSICS_DELAY);
+        syncManager.setInterpolation(Globals.NETWORK_INTERPOLATION);
         syncManager.setMessageTypes(AutoControlMessage.class,
                 ManualControlMessage.class,
                 ActionMessage.class,
                 SyncCharacterMessage.class,
                 SyncRigidBodyMessage.class,
+                SyncDeltaMessage.class,
+                PhysicsSyncBatchMessage.class,
                 ServerEntityDataMessage.class,
                 ServerEnterEntityMessage.class,
                 ServerAddEntityMessage.class,
@@ -228,7 +233,7 @@ public class ClientMain extends SimpleApplication implements ScreenController {
                 for (Iterator<PlayerData> it = players.iterator(); it.hasNext();) {
                     PlayerData data = it.next();
                     Logger.getLogger(ClientMain.class.getName()).log(Level.INFO, "List player {0}", data);
-                    labelCreator.setText(data.getStringData("name"));
+                    labelCreator.setText(data.getStringData(PlayerData.NAME));
                     labelCreator.create(nifty, screen, panel);
                 }
                 return null;
@@ -405,6 +410,7 @@ public class ClientMain extends SimpleApplication implements ScreenController {
         } catch (Exception ex) {
             Logger.getLogger(ClientMain.class.getName()).log(Level.SEVERE, null, ex);
         }
+        worldManager.getPathfindingService().shutdown();
         super.destroy();
     }
 }
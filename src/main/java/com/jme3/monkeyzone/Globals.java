@@ -31,6 +31,8 @@
  */
 package com.jme3.monkeyzone;
 
+import com.jme3.math.Vector3f;
+
 /**
  * contains version info and various global variables
  * @author normenhansen
@@ -48,6 +50,27 @@ public class Globals {
 
     public static final float NETWORK_SYNC_FREQUENCY = 0.25f;
     public static final float NETWORK_MAX_PHYSICS_DELAY = 0.25f;
+    //interpolate physics objects between sync messages on the client
+    public static final boolean NETWORK_INTERPOLATION = true;
+    //send only changes of physics objects instead of full state
+    public static final boolean NETWORK_DELTA_SYNC = true;
+    public static final float NETWORK_DELTA_EPSILON = 0.005f;
+    //objects further away from the players entities are synced less often
+    public static final float NETWORK_INTEREST_RADIUS = 100;
+    public static final int NETWORK_FAR_SYNC_INTERVAL = 4;
+    //approximate bytes of physics sync data sent to each client per sync tick, 0 = unlimited
+    public static final int NETWORK_SYNC_BYTE_BUDGET = 1200;
+    //range of the fixed point values in physics sync messages, larger values are clamped
+    public static final Vector3f WORLD_MIN = new Vector3f(-256, -64, -256);
+    public static final Vector3f WORLD_MAX = new Vector3f(256, 192, 256);
+    public static final float NETWORK_MAX_LINEAR_VELOCITY = 128;
+    public static final float NETWORK_MAX_ANGULAR_VELOCITY = 64;
+    //worker threads used to compute AI paths on the NavMesh
+    public static final int PATHFINDING_THREADS = 2;
+    //store generated NavMeshes in the storage folder and load them on the next start
+    public static final boolean NAVMESH_CACHE = true;
+    //edge length of the NavMesh tiles that are updated when static entities are added or removed
+    public static final float NAVMESH_TILE_SIZE = 32;
     public static final int SCENE_FPS = 60;
     public static final float PHYSICS_FPS = 1f / 30f;
     //only applies for client, server doesnt render anyway
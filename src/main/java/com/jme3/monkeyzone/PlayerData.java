@@ -31,134 +31,226 @@
  */
 package com.jme3.monkeyzone;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import com.jme3.network.physicssync.IdAllocator;
+import com.jme3.network.physicssync.LongMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Basic class to store data about players (Human and AI), could be replaced by
- * a database or similar, static access with synchronization. Access is assured
- * to be sequential during the game, so in theory syncing is not needed. Used on
- * server and on client.
+ * a database or similar, static access. Used on server and on client.
+ * <p>Data is stored in slots, the keys are registered once and then accessed
+ * by their int slot. Numbers and booleans are stored as primitives in one
+ * atomic array, strings in another. The player map and the player lists are
+ * kept in an immutable snapshot that is replaced when players are added or
+ * removed, so reading needs no locks and getting the player lists allocates
+ * nothing.</p>
  * @author normenhansen
  */
 public class PlayerData {
 
-    private static HashMap<Long, PlayerData> players = new HashMap<Long, PlayerData>();
+    public static final int MAX_KEYS = 32;
+    private static final ConcurrentHashMap<String, Integer> keys = new ConcurrentHashMap<String, Integer>();
+    public static final int NAME = registerKey("name");
+    public static final int GROUP_ID = registerKey("group_id");
+    public static final int ENTITY_ID = registerKey("entity_id");
+    public static final int CHARACTER_ENTITY_ID = registerKey("character_entity_id");
+    public static final int CLIENT_ID = registerKey("client_id");
+    private static final IdAllocator playerIds = new IdAllocator();
+    private static volatile Snapshot snapshot = new Snapshot(new LongMap<PlayerData>(), new ArrayList<PlayerData>());
     private long id;
-    private int aiControl = -1;
-    private HashMap<String, Float> floatData = new HashMap<String, Float>();
-    private HashMap<String, Integer> intData = new HashMap<String, Integer>();
-    private HashMap<String, Long> longData = new HashMap<String, Long>();
-    private HashMap<String, Boolean> booleanData = new HashMap<String, Boolean>();
-    private HashMap<String, String> stringData = new HashMap<String, String>();
-
-    public static synchronized List<PlayerData> getHumanPlayers() {
-        LinkedList<PlayerData> list = new LinkedList<PlayerData>();
-        for (Iterator<Entry<Long, PlayerData>> it = players.entrySet().iterator(); it.hasNext();) {
-            Entry<Long, PlayerData> entry = it.next();
-            if (entry.getValue().isHuman()) {
-                list.add(entry.getValue());
+    private volatile int aiControl = -1;
+    private final AtomicLongArray primitiveData = new AtomicLongArray(MAX_KEYS);
+    private final AtomicReferenceArray<String> stringData = new AtomicReferenceArray<String>(MAX_KEYS);
+
+    /**
+     * registers a data key, returns the existing slot if the key is already
+     * registered
+     * @param key
+     * @return the slot of the key
+     */
+    public static synchronized int registerKey(String key) {
+        Integer slot = keys.get(key);
+        if (slot == null) {
+            if (keys.size() >= MAX_KEYS) {
+                throw new IllegalStateException("Cannot register more than " + MAX_KEYS + " player data keys");
             }
+            slot = keys.size();
+            keys.put(key, slot);
         }
-        return list;
+        return slot;
     }
 
-    public static synchronized List<PlayerData> getAIPlayers() {
-        LinkedList<PlayerData> list = new LinkedList<PlayerData>();
-        for (Iterator<Entry<Long, PlayerData>> it = players.entrySet().iterator(); it.hasNext();) {
-            Entry<Long, PlayerData> entry = it.next();
-            if (!entry.getValue().isHuman()) {
-                list.add(entry.getValue());
-            }
+    /**
+     * gets the slot of a data key, registers the key if needed, prefer storing
+     * the slot instead of calling this for each access
+     * @param key
+     * @return
+     */
+    public static int getKey(String key) {
+        Integer slot = keys.get(key);
+        if (slot == null) {
+            return registerKey(key);
         }
-        return list;
+        return slot;
+    }
+
+    /**
+     * @return unmodifiable list of the human players at the time of the call
+     */
+    public static List<PlayerData> getHumanPlayers() {
+        return snapshot.humans;
     }
 
-    public static synchronized List<PlayerData> getPlayers() {
-        LinkedList<PlayerData> list = new LinkedList<PlayerData>(players.values());
-        return list;
+    /**
+     * @return unmodifiable list of the AI players at the time of the call
+     */
+    public static List<PlayerData> getAIPlayers() {
+        return snapshot.ais;
+    }
+
+    /**
+     * @return unmodifiable list of all players at the time of the call
+     */
+    public static List<PlayerData> getPlayers() {
+        return snapshot.all;
+    }
+
+    /**
+     * gets the ids of all players at the time of the call, the array is shared
+     * and must not be modified
+     * @return
+     */
+    public static long[] getPlayerIds() {
+        return snapshot.ids;
     }
 
+    /**
+     * creates a new player with a new generation tagged id, ids of removed
+     * players are reused with a new generation
+     * @param name
+     * @return the id of the new player
+     */
     public static synchronized long getNew(String name) {
-        long id = 0;
-        while (players.containsKey(id)) {
-            id++;
-        }
-        players.put(id, new PlayerData(id, name));
+        long id = playerIds.allocate();
+        add(id, new PlayerData(id, name));
         return id;
     }
 
     public static synchronized void add(long id, PlayerData player) {
-        players.put(id, player);
+        LongMap<PlayerData> map = new LongMap<PlayerData>(snapshot.map);
+        ArrayList<PlayerData> list = new ArrayList<PlayerData>(snapshot.all);
+        PlayerData old = map.put(id, player);
+        if (old != null) {
+            list.remove(old);
+        }
+        list.add(player);
+        snapshot = new Snapshot(map, list);
     }
 
     public static synchronized void remove(long id) {
-        players.remove(id);
+        playerIds.release(id);
+        LongMap<PlayerData> map = new LongMap<PlayerData>(snapshot.map);
+        PlayerData old = map.remove(id);
+        if (old == null) {
+            return;
+        }
+        ArrayList<PlayerData> list = new ArrayList<PlayerData>(snapshot.all);
+        list.remove(old);
+        snapshot = new Snapshot(map, list);
+    }
+
+    /**
+     * updates the human and AI player lists after the AI control of a player
+     * changed
+     */
+    private static synchronized void updateSnapshot() {
+        snapshot = new Snapshot(snapshot.map, new ArrayList<PlayerData>(snapshot.all));
+    }
+
+    /**
+     * gets the player with the given id
+     * @param id
+     * @return the player or null
+     */
+    public static PlayerData get(long id) {
+        return snapshot.map.get(id);
     }
 
-    public static synchronized int getAiControl(long id) {
-        return players.get(id).getAiControl();
+    public static int getAiControl(long id) {
+        return snapshot.map.get(id).getAiControl();
     }
 
-    public static synchronized void setAiControl(long id, int aiControl) {
-        players.get(id).setAiControl(aiControl);
+    public static void setAiControl(long id, int aiControl) {
+        snapshot.map.get(id).setAiControl(aiControl);
     }
 
-    public static synchronized boolean isHuman(long id) {
-        return players.get(id).isHuman();
+    public static boolean isHuman(long id) {
+        return snapshot.map.get(id).isHuman();
     }
 
-    public static synchronized float getFloatData(long id, String key) {
-        if (!players.containsKey(id)) return -1;
-        return players.get(id).getFloatData(key);
+    public static float getFloatData(long id, int key) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return -1;
+        return player.getFloatData(key);
     }
 
-    public static synchronized void setData(long id, String key, float data) {
-        if (!players.containsKey(id)) return;
-        players.get(id).setData(key, data);
+    public static void setData(long id, int key, float data) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return;
+        player.setData(key, data);
     }
 
-    public static synchronized int getIntData(long id, String key) {
-        if (!players.containsKey(id)) return -1;
-        return players.get(id).getIntData(key);
+    public static int getIntData(long id, int key) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return -1;
+        return player.getIntData(key);
     }
 
-    public static synchronized void setData(long id, String key, int data) {
-        if (!players.containsKey(id)) return;
-        players.get(id).setData(key, data);
+    public static void setData(long id, int key, int data) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return;
+        player.setData(key, data);
     }
 
-    public static synchronized long getLongData(long id, String key) {
-        if (!players.containsKey(id)) return -1;
-        return players.get(id).getLongData(key);
+    public static long getLongData(long id, int key) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return -1;
+        return player.getLongData(key);
     }
 
-    public static synchronized void setData(long id, String key, long data) {
-        if (!players.containsKey(id)) return;
-        players.get(id).setData(key, data);
+    public static void setData(long id, int key, long data) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return;
+        player.setData(key, data);
     }
 
-    public static synchronized boolean getBooleanData(long id, String key) {
-        if (!players.containsKey(id)) return false;
-        return players.get(id).getBooleanData(key);
+    public static boolean getBooleanData(long id, int key) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return false;
+        return player.getBooleanData(key);
     }
 
-    public static synchronized void setData(long id, String key, boolean data) {
-        if (!players.containsKey(id)) return;
-        players.get(id).setData(key, data);
+    public static void setData(long id, int key, boolean data) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return;
+        player.setData(key, data);
     }
 
-    public static synchronized String getStringData(long id, String key) {
-        if (!players.containsKey(id)) return "unknown";
-        return players.get(id).getStringData(key);
+    public static String getStringData(long id, int key) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return "unknown";
+        return player.getStringData(key);
     }
 
-    public static synchronized void setData(long id, String key, String data) {
-        if (!players.containsKey(id)) return;
-        players.get(id).setData(key, data);
+    public static void setData(long id, int key, String data) {
+        PlayerData player = snapshot.map.get(id);
+        if (player == null) return;
+        player.setData(key, data);
     }
 
     public PlayerData(long id) {
@@ -177,16 +269,16 @@ public class PlayerData {
      */
     public PlayerData(long id, String name) {
         this.id = id;
-        setData("name", name);
-        setData("entity_id", (long) -1);
+        setData(NAME, name);
+        setData(ENTITY_ID, (long) -1);
     }
 
     public PlayerData(long id, int groupId, String name, int aiControl) {
         this.id = id;
         this.aiControl = aiControl;
-        setData("group_id", groupId);
-        setData("name", name);
-        setData("entity_id", (long) -1);
+        setData(GROUP_ID, groupId);
+        setData(NAME, name);
+        setData(ENTITY_ID, (long) -1);
     }
 
     public long getId() {
@@ -198,50 +290,86 @@ public class PlayerData {
     }
 
     public void setAiControl(int aiControl) {
+        boolean human = isHuman();
         this.aiControl = aiControl;
+        if (human != isHuman() && snapshot.map.get(id) == this) {
+            updateSnapshot();
+        }
     }
 
     public boolean isHuman() {
         return aiControl == -1;
     }
 
-    public float getFloatData(String key) {
-        return floatData.get(key);
+    public float getFloatData(int key) {
+        return Float.intBitsToFloat((int) primitiveData.get(key));
     }
 
-    public void setData(String key, float data) {
-        floatData.put(key, data);
+    public void setData(int key, float data) {
+        primitiveData.set(key, Float.floatToIntBits(data));
     }
 
-    public int getIntData(String key) {
-        return intData.get(key);
+    public int getIntData(int key) {
+        return (int) primitiveData.get(key);
     }
 
-    public void setData(String key, int data) {
-        intData.put(key, data);
+    public void setData(int key, int data) {
+        primitiveData.set(key, data);
     }
 
-    public long getLongData(String key) {
-        return longData.get(key);
+    public long getLongData(int key) {
+        return primitiveData.get(key);
     }
 
-    public void setData(String key, long data) {
-        longData.put(key, data);
+    public void setData(int key, long data) {
+        primitiveData.set(key, data);
     }
 
-    public boolean getBooleanData(String key) {
-        return booleanData.get(key);
+    public boolean getBooleanData(int key) {
+        return primitiveData.get(key) != 0;
     }
 
-    public void setData(String key, boolean data) {
-        booleanData.put(key, data);
+    public void setData(int key, boolean data) {
+        primitiveData.set(key, data ? 1 : 0);
     }
 
-    public String getStringData(String key) {
+    public String getStringData(int key) {
         return stringData.get(key);
     }
 
-    public void setData(String key, String data) {
-        stringData.put(key, data);
+    public void setData(int key, String data) {
+        stringData.set(key, data);
+    }
+
+    /**
+     * immutable state of the player registry
+     */
+    private static final class Snapshot {
+
+        final LongMap<PlayerData> map;
+        final List<PlayerData> all;
+        final List<PlayerData> humans;
+        final List<PlayerData> ais;
+        final long[] ids;
+
+        Snapshot(LongMap<PlayerData> map, ArrayList<PlayerData> all) {
+            ArrayList<PlayerData> humanList = new ArrayList<PlayerData>();
+            ArrayList<PlayerData> aiList = new ArrayList<PlayerData>();
+            long[] idArray = new long[all.size()];
+            for (int i = 0; i < all.size(); i++) {
+                PlayerData player = all.get(i);
+                idArray[i] = player.getId();
+                if (player.isHuman()) {
+                    humanList.add(player);
+                } else {
+                    aiList.add(player);
+                }
+            }
+            this.map = map;
+            this.all = Collections.unmodifiableList(all);
+            this.humans = Collections.unmodifiableList(humanList);
+            this.ais = Collections.unmodifiableList(aiList);
+            this.ids = idArray;
+        }
     }
 }
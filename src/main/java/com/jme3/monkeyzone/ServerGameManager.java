@@ -87,13 +87,13 @@ public class ServerGameManager extends AbstractAppState {
         for (Iterator<PlayerData> it = PlayerData.getPlayers().iterator(); it.hasNext();) {
             PlayerData playerData = it.next();
             long entityId = worldManager.addNewEntity("Models/Sinbad/Sinbad.j3o", new Vector3f(i * 3, 3, 0), new Quaternion());
-            playerData.setData("character_entity_id", entityId);
+            playerData.setData(PlayerData.CHARACTER_ENTITY_ID, entityId);
             worldManager.enterEntity(playerData.getId(), entityId);
 
             //create new ai player for user
-            long playearId = worldManager.addNewPlayer(PlayerData.getIntData(playerData.getId(), "group_id"), "AI", 0);
+            long playearId = worldManager.addNewPlayer(PlayerData.getIntData(playerData.getId(), PlayerData.GROUP_ID), "AI", 0);
             long entitayId = worldManager.addNewEntity("Models/Sinbad/Sinbad.j3o", new Vector3f(i * 3, 3, 3), new Quaternion());
-            PlayerData.setData(playearId, "character_entity_id", entitayId);
+            PlayerData.setData(playearId, PlayerData.CHARACTER_ENTITY_ID, entitayId);
             worldManager.enterEntity(playearId, entitayId);
 
             //create a vehicle
@@ -157,7 +157,7 @@ public class ServerGameManager extends AbstractAppState {
      * @param myEntity
      */
     private void performEnterEntity(long player_id, Spatial myEntity) {
-        long characterId = PlayerData.getLongData(player_id, "character_entity_id");
+        long characterId = PlayerData.getLongData(player_id, PlayerData.CHARACTER_ENTITY_ID);
         long curEntityId = (Long) myEntity.getUserData("entity_id");
         Spatial entity = worldManager.doRayTest(myEntity, 4, null);
         if (entity != null && (Long) entity.getUserData("player_id") == -1l) {
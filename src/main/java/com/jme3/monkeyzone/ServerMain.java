@@ -38,6 +38,7 @@ import com.jme3.monkeyzone.messages.AutoControlMessage;
 import com.jme3.monkeyzone.messages.ManualControlMessage;
 import com.jme3.network.Network;
 import com.jme3.network.physicssync.PhysicsSyncManager;
+import com.jme3.network.physicssync.SyncAckMessage;
 import com.jme3.renderer.RenderManager;
 import com.jme3.system.AppSettings;
 import java.io.IOException;
@@ -95,15 +96,24 @@ public class ServerMain extends SimpleApplication {
         //create sync manager
         syncManager = new PhysicsSyncManager(app, server);
         syncManager.setSyncFrequency(Globals.NETWORK_SYNC_FREQUENCY);
+        syncManager.setDeltaCompression(Globals.NETWORK_DELTA_SYNC);
+        syncManager.setDeltaEpsilon(Globals.NETWORK_DELTA_EPSILON);
         syncManager.setMessageTypes(AutoControlMessage.class,
                 ActionMessage.class,
-                ManualControlMessage.class);
+                ManualControlMessage.class,
+                SyncAckMessage.class);
         stateManager.attach(syncManager);
         //cerate world manager
         worldManager = new WorldManager(this, rootNode);
         stateManager.attach(worldManager);
         //register world manager with sync manager so that messages can apply their data
         syncManager.addObject(-1, worldManager);
+        //only send physics objects near the players entities each sync tick
+        syncManager.setInterestProvider(worldManager);
+        syncManager.setInterestRadius(Globals.NETWORK_INTEREST_RADIUS);
+        syncManager.setFarSyncInterval(Globals.NETWORK_FAR_SYNC_INTERVAL);
+        //send the most important physics objects first within a fixed budget
+        syncManager.setByteBudget(Globals.NETWORK_SYNC_BYTE_BUDGET);
         //create server side game manager
         gameManager = new ServerGameManager();
         stateManager.attach(gameManager);
@@ -123,6 +133,7 @@ public class ServerMain extends SimpleApplication {
     @Override
     public void destroy() {
         super.destroy();
+        worldManager.getPathfindingService().shutdown();
         server.close();
     }
 }
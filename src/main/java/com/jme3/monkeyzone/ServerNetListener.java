@@ -85,7 +85,7 @@ public class ServerNetListener implements MessageListener<HostedConnection>, Con
         app.enqueue(new Callable<Void>() {
 
             public Void call() throws Exception {
-                String name = PlayerData.getStringData(playerId, "name");
+                String name = PlayerData.getStringData(playerId, PlayerData.NAME);
                 worldManager.removePlayer(playerId);
                 server.broadcast(new ChatMessage("Server", name + " left the game"));
                 Logger.getLogger(ServerNetListener.class.getName()).log(Level.INFO, "Broadcast player left message");
@@ -133,11 +133,11 @@ public class ServerNetListener implements MessageListener<HostedConnection>, Con
                 public Void call() throws Exception {
                     //TODO: client id as group id
                     worldManager.addPlayer(newPlayerId, clientId, msg.name, -1);
-                    PlayerData.setData(newPlayerId, "client_id", clientId);
+                    PlayerData.setData(newPlayerId, PlayerData.CLIENT_ID, clientId);
                     for (Iterator<PlayerData> it = PlayerData.getPlayers().iterator(); it.hasNext();) {
                         PlayerData playerData = it.next();
                         if (playerData.getId() != newPlayerId) {
-                            worldManager.getSyncManager().send(clientId, new ServerAddPlayerMessage(playerData.getId(), playerData.getStringData("name"), playerData.getIntData("group_id"), playerData.getAiControl()));
+                            worldManager.getSyncManager().send(clientId, new ServerAddPlayerMessage(playerData.getId(), playerData.getStringData(PlayerData.NAME), playerData.getIntData(PlayerData.GROUP_ID), playerData.getAiControl()));
                             Logger.getLogger(ServerNetListener.class.getName()).log(Level.INFO, "Send player {0} to client {1}", new Object[]{playerData.getId(), newPlayerId});
                         }
                     }
@@ -152,7 +152,7 @@ public class ServerNetListener implements MessageListener<HostedConnection>, Con
                 return;
             }
             try {
-                msg.name = PlayerData.getStringData(ServerClientData.getPlayerId(clientId), "name");
+                msg.name = PlayerData.getStringData(ServerClientData.getPlayerId(clientId), PlayerData.NAME);
                 server.broadcast(msg);
             } catch (Exception ex) {
                 Logger.getLogger(ServerNetListener.class.getName()).log(Level.SEVERE, "Error broadcasting chat: {0}", ex);
@@ -40,7 +40,11 @@ import com.jme3.monkeyzone.messages.ManualControlMessage;
 import com.jme3.monkeyzone.messages.ServerAddEntityMessage;
 import com.jme3.monkeyzone.messages.ServerAddPlayerMessage;
 import com.jme3.monkeyzone.messages.ServerDisableEntityMessage;
+import com.jme3.network.physicssync.PhysicsSyncBatchMessage;
+import com.jme3.network.physicssync.SyncAckMessage;
 import com.jme3.network.physicssync.SyncCharacterMessage;
+import com.jme3.network.physicssync.SyncDeltaMessage;
+import com.jme3.network.physicssync.SyncMessageSerializer;
 import com.jme3.monkeyzone.messages.ServerEffectMessage;
 import com.jme3.monkeyzone.messages.ServerEnableEntityMessage;
 import com.jme3.monkeyzone.messages.ServerEnterEntityMessage;
@@ -86,14 +90,19 @@ public class Util {
         Serializer.registerClass(ManualControlMessage.class);
         Serializer.registerClass(ServerAddEntityMessage.class);
         Serializer.registerClass(ServerAddPlayerMessage.class);
-        Serializer.registerClass(SyncCharacterMessage.class);
+        SyncMessageSerializer.setWorldBounds(Globals.WORLD_MIN, Globals.WORLD_MAX);
+        SyncMessageSerializer.setMaxVelocity(Globals.NETWORK_MAX_LINEAR_VELOCITY, Globals.NETWORK_MAX_ANGULAR_VELOCITY);
+        Serializer.registerClass(SyncCharacterMessage.class, new SyncMessageSerializer());
         Serializer.registerClass(ServerEffectMessage.class);
         Serializer.registerClass(ServerEnableEntityMessage.class);
         Serializer.registerClass(ServerDisableEntityMessage.class);
         Serializer.registerClass(ServerEnterEntityMessage.class);
         Serializer.registerClass(ServerEntityDataMessage.class);
         Serializer.registerClass(ServerJoinMessage.class);
-        Serializer.registerClass(SyncRigidBodyMessage.class);
+        Serializer.registerClass(SyncRigidBodyMessage.class, new SyncMessageSerializer());
+        Serializer.registerClass(SyncDeltaMessage.class);
+        Serializer.registerClass(PhysicsSyncBatchMessage.class);
+        Serializer.registerClass(SyncAckMessage.class);
         Serializer.registerClass(ServerPlayerDataMessage.class);
         Serializer.registerClass(ServerRemoveEntityMessage.class);
         Serializer.registerClass(ServerRemovePlayerMessage.class);
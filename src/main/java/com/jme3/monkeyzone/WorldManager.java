@@ -36,6 +36,9 @@ import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.asset.AssetManager;
 import com.jme3.asset.DesktopAssetManager;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
 import com.jme3.bullet.BulletAppState;
 import com.jme3.bullet.PhysicsSpace;
 import com.jme3.bullet.collision.PhysicsCollisionObject;
@@ -47,6 +50,7 @@ import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.FastMath;
 import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
 import com.jme3.math.Vector3f;
 import com.jme3.monkeyzone.controls.AutonomousCharacterControl;
 import com.jme3.monkeyzone.controls.AutonomousControl;
@@ -69,22 +73,36 @@ import com.jme3.monkeyzone.messages.ServerEntityDataMessage;
 import com.jme3.monkeyzone.messages.ServerRemoveEntityMessage;
 import com.jme3.monkeyzone.messages.ServerRemovePlayerMessage;
 import com.jme3.network.Client;
+import com.jme3.network.HostedConnection;
 import com.jme3.network.Server;
+import com.jme3.network.physicssync.IdAllocator;
+import com.jme3.network.physicssync.LongMap;
 import com.jme3.network.physicssync.PhysicsSyncManager;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
+import com.jme3.network.physicssync.SyncInterestProvider;
 import com.jme3.network.physicssync.SyncMessageValidator;
 import jme3tools.navmesh.NavMesh;
+import jme3tools.navmesh.NavMeshTiles;
+import jme3tools.navmesh.PathfindingService;
 import jme3tools.navmesh.util.NavMeshGenerator;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.control.Control;
+import com.jme3.scene.mesh.IndexBuffer;
+import com.jme3.system.JmeSystem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jme3tools.optimize.GeometryBatchFactory;
@@ -95,17 +113,21 @@ import jme3tools.optimize.GeometryBatchFactory;
  * running on server, used to apply network data on client and server.
  * @author normenhansen
  */
-public class WorldManager extends AbstractAppState implements SyncMessageValidator {
+public class WorldManager extends AbstractAppState implements SyncMessageValidator, SyncInterestProvider {
 
     private Server server;
     private Client client;
     private long myPlayerId = -2;
     private long myGroupId = -2;
     private NavMesh navMesh = new NavMesh();
+    private PathfindingService pathfindingService = new PathfindingService(navMesh, Globals.PATHFINDING_THREADS);
+    private NavMeshTiles navMeshTiles;
     private Node rootNode;
     private Node worldRoot;
-    private HashMap<Long, Spatial> entities = new HashMap<Long, Spatial>();
-    private int newId = 0;
+    private LongMap<Spatial> entities = new LongMap<Spatial>();
+    //entities that players of each group are in, the observers of the group
+    private HashMap<Integer, LongMap<Spatial>> groupEntities = new HashMap<Integer, LongMap<Spatial>>();
+    private IdAllocator idAllocator = new IdAllocator();
     private Application app;
     private AssetManager assetManager;
     private NavMeshGenerator generator = new NavMeshGenerator();
@@ -176,6 +198,23 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         return navMesh;
     }
 
+    /**
+     * get the service that computes paths on the NavMesh on worker threads
+     * @return
+     */
+    public PathfindingService getPathfindingService() {
+        return pathfindingService;
+    }
+
+    /**
+     * get the tiles that block the NavMesh cells under static entities,
+     * null if no NavMesh was created for the level
+     * @return
+     */
+    public NavMeshTiles getNavMeshTiles() {
+        return navMeshTiles;
+    }
+
     /**
      * get the world root node (not necessarily the application rootNode!)
      * @return
@@ -204,9 +243,14 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
      * detaches the level and clears the cache
      */
     public void closeLevel() {
+        Logger.getLogger(WorldManager.class.getName()).log(Level.INFO, "Closing level, path corridor cache: {0}", navMesh.getCorridorCache());
+        if (navMeshTiles != null) {
+            navMeshTiles.shutdown();
+            navMeshTiles = null;
+        }
         for (Iterator<PlayerData> it = PlayerData.getPlayers().iterator(); it.hasNext();) {
             PlayerData playerData = it.next();
-            playerData.setData("entity_id", -1l);
+            playerData.setData(PlayerData.ENTITY_ID, -1l);
         }
         if (isServer()) {
             for (Iterator<PlayerData> it = PlayerData.getAIPlayers().iterator(); it.hasNext();) {
@@ -214,13 +258,14 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
                 removePlayer(playerData.getId());
             }
         }
-        for (Iterator<Long> et = new LinkedList(entities.keySet()).iterator(); et.hasNext();) {
-            Long entry = et.next();
-            syncManager.removeObject(entry);
+        long[] entityIds = entities.keys();
+        for (int i = 0; i < entityIds.length; i++) {
+            syncManager.removeObject(entityIds[i]);
         }
         syncManager.clearObjects();
         entities.clear();
-        newId = 0;
+        groupEntities.clear();
+        idAllocator.releaseAll();
         space.removeAll(worldRoot);
         rootNode.detachChild(worldRoot);
         ((DesktopAssetManager) assetManager).clearCache();
@@ -238,17 +283,55 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
     }
 
     /**
-     * creates the nav mesh for the loaded level
+     * creates the nav mesh for the loaded level, if a NavMesh for the same
+     * level geometry was created before it is loaded from the storage folder.
+     * Has to be called before entities are added so static entities can
+     * block the NavMesh.
      */
     public void createNavMesh() {
+        long startTime = System.nanoTime();
+        List<Geometry> geometries = findGeometries(worldRoot, new LinkedList<Geometry>());
+        File cacheFile = Globals.NAVMESH_CACHE ? getNavMeshCacheFile(geometries) : null;
+        Mesh optiMesh = null;
+
+        if (cacheFile != null && cacheFile.exists()) {
+            try {
+                navMesh.readBinary(cacheFile);
+                optiMesh = navMesh.createMesh();
+                Logger.getLogger(WorldManager.class.getName()).log(Level.INFO, "Loaded NavMesh with {0} cells from {1} in {2} ms",
+                        new Object[]{navMesh.getNumCells(), cacheFile, (System.nanoTime() - startTime) / 1000000});
+            } catch (IOException ex) {
+                Logger.getLogger(WorldManager.class.getName()).log(Level.WARNING, "Could not load NavMesh from " + cacheFile + ", creating it again", ex);
+            }
+        }
+
+        if (optiMesh == null) {
+            Mesh mesh = new Mesh();
 
-        Mesh mesh = new Mesh();
+            //version a: from mesh
+            GeometryBatchFactory.mergeGeometries(geometries, mesh);
+            optiMesh = generator.optimize(mesh);
+            long generatedTime = System.nanoTime();
 
-        //version a: from mesh
-        GeometryBatchFactory.mergeGeometries(findGeometries(worldRoot, new LinkedList<Geometry>()), mesh);
-        Mesh optiMesh = generator.optimize(mesh);
+            navMesh.loadFromMesh(optiMesh);
+            long loadedTime = System.nanoTime();
+            Logger.getLogger(WorldManager.class.getName()).log(Level.INFO, "Created NavMesh with {0} cells, generating took {1} ms, loading and linking took {2} ms",
+                    new Object[]{navMesh.getNumCells(), (generatedTime - startTime) / 1000000, (loadedTime - generatedTime) / 1000000});
 
-        navMesh.loadFromMesh(optiMesh);
+            if (cacheFile != null) {
+                try {
+                    navMesh.writeBinary(cacheFile);
+                } catch (IOException ex) {
+                    Logger.getLogger(WorldManager.class.getName()).log(Level.WARNING, "Could not store NavMesh in " + cacheFile, ex);
+                }
+            }
+        }
+
+        if (navMeshTiles != null) {
+            navMeshTiles.shutdown();
+        }
+        navMeshTiles = new NavMeshTiles(navMesh, Globals.NAVMESH_TILE_SIZE);
+        Logger.getLogger(WorldManager.class.getName()).log(Level.INFO, "Split NavMesh into {0} tiles", navMeshTiles.getTileCount());
 
         //TODO: navmesh only for debug
         Geometry navGeom = new Geometry("NavMesh");
@@ -269,6 +352,66 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         rootNode.attachChild(worldRoot);
     }
 
+    /**
+     * gets the file the NavMesh for the given level geometries is cached in,
+     * the name contains a hash of the geometry and the generator settings
+     * @return the file or null if no hash could be created
+     */
+    private File getNavMeshCacheFile(List<Geometry> geometries) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            buffer.putFloat(generator.getCellSize()).putFloat(generator.getCellHeight());
+            buffer.putFloat(generator.getMinTraversableHeight()).putFloat(generator.getMaxTraversableStep());
+            buffer.putFloat(generator.getMaxTraversableSlope()).putFloat(generator.getTraversableAreaBorderSize());
+            buffer.putInt(generator.getSmoothingThreshold()).putInt(generator.getMinUnconnectedRegionSize());
+            buffer.putInt(generator.getMergeRegionSize()).putFloat(generator.getMaxEdgeLength());
+            buffer.putFloat(generator.getEdgeMaxDeviation()).putInt(generator.getMaxVertsPerPoly());
+            buffer.putFloat(generator.getContourSampleDistance()).putFloat(generator.getContourMaxDeviation());
+            digest.update(buffer.array(), 0, buffer.position());
+            for (Iterator<Geometry> it = geometries.iterator(); it.hasNext();) {
+                Geometry geometry = it.next();
+                buffer.clear();
+                Transform transform = geometry.getWorldTransform();
+                Vector3f translation = transform.getTranslation();
+                Quaternion rotation = transform.getRotation();
+                Vector3f scale = transform.getScale();
+                buffer.putFloat(translation.x).putFloat(translation.y).putFloat(translation.z);
+                buffer.putFloat(rotation.getX()).putFloat(rotation.getY()).putFloat(rotation.getZ()).putFloat(rotation.getW());
+                buffer.putFloat(scale.x).putFloat(scale.y).putFloat(scale.z);
+                digest.update(buffer.array(), 0, buffer.position());
+
+                Mesh mesh = geometry.getMesh();
+                FloatBuffer positions = mesh.getFloatBuffer(Type.Position);
+                if (positions != null) {
+                    //the buffer is shared with the mesh, read a duplicate up to its limit
+                    FloatBuffer data = positions.duplicate();
+                    data.position(0);
+                    ByteBuffer bytes = ByteBuffer.allocate(data.limit() * 4);
+                    bytes.asFloatBuffer().put(data);
+                    digest.update(bytes.array());
+                }
+                IndexBuffer indices = mesh.getIndexBuffer();
+                if (indices != null) {
+                    ByteBuffer bytes = ByteBuffer.allocate(indices.size() * 4);
+                    for (int i = 0; i < indices.size(); i++) {
+                        bytes.putInt(indices.get(i));
+                    }
+                    digest.update(bytes.array());
+                }
+            }
+            StringBuilder name = new StringBuilder("navmesh-");
+            byte[] hash = digest.digest();
+            for (int i = 0; i < hash.length; i++) {
+                name.append(Integer.toHexString((hash[i] & 0xFF) | 0x100).substring(1));
+            }
+            return new File(JmeSystem.getStorageFolder(), name.append(".bin").toString());
+        } catch (NoSuchAlgorithmException ex) {
+            Logger.getLogger(WorldManager.class.getName()).log(Level.WARNING, "Can not cache NavMesh", ex);
+            return null;
+        }
+    }
+
     private List<Geometry> findGeometries(Node node, List<Geometry> geoms) {
         for (Iterator<Spatial> it = node.getChildren().iterator(); it.hasNext();) {
             Spatial spatial = it.next();
@@ -320,16 +463,84 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         if (isServer()) {
             //TODO: remove other (AI) entities if this is a human client..
             syncManager.broadcast(new ServerRemovePlayerMessage(id));
-            long entityId = PlayerData.getLongData(id, "entity_id");
+            long entityId = PlayerData.getLongData(id, PlayerData.ENTITY_ID);
             if (entityId != -1) {
                 enterEntity(id, -1);
             }
-            long characterId = PlayerData.getLongData(id, "character_entity_id");
+            long characterId = PlayerData.getLongData(id, PlayerData.CHARACTER_ENTITY_ID);
             removeEntity(characterId);
         }
         PlayerData.remove(id);
     }
 
+    /**
+     * gets the locations of the entities the client can see from, that is the
+     * entity of its player and all entities of its players group (server only)
+     * @param client
+     * @param store
+     */
+    public void getObserverLocations(HostedConnection client, List<Vector3f> store) {
+        int clientId = client.getId();
+        if (!ServerClientData.exsists(clientId) || !ServerClientData.isConnected(clientId)) {
+            return;
+        }
+        long playerId = ServerClientData.getPlayerId(clientId);
+        Spatial playerEntity = entities.get(PlayerData.getLongData(playerId, PlayerData.ENTITY_ID));
+        if (playerEntity == null) {
+            return;
+        }
+        store.add(playerEntity.getWorldTranslation());
+        Integer groupId = playerEntity.getUserData("group_id");
+        if (groupId == null || groupId == -1) {
+            return;
+        }
+        LongMap<Spatial> group = groupEntities.get(groupId);
+        if (group == null) {
+            return;
+        }
+        for (Iterator<LongMap.Entry<Spatial>> it = group.iterator(); it.hasNext();) {
+            Spatial spat = it.next().getValue();
+            if (spat != playerEntity) {
+                store.add(spat.getWorldTranslation());
+            }
+        }
+    }
+
+    /**
+     * adds the entity to the entities of the group
+     * @param groupId
+     * @param entityId
+     * @param entity
+     */
+    private void addGroupEntity(int groupId, long entityId, Spatial entity) {
+        if (groupId == -1) {
+            return;
+        }
+        LongMap<Spatial> group = groupEntities.get(groupId);
+        if (group == null) {
+            group = new LongMap<Spatial>();
+            groupEntities.put(groupId, group);
+        }
+        group.put(entityId, entity);
+    }
+
+    /**
+     * removes the entity from the entities of the group stored in its
+     * "group_id" userdata
+     * @param entityId
+     * @param entity
+     */
+    private void removeGroupEntity(long entityId, Spatial entity) {
+        Integer groupId = entity.getUserData("group_id");
+        if (groupId == null) {
+            return;
+        }
+        LongMap<Spatial> group = groupEntities.get(groupId);
+        if (group != null && group.remove(entityId) != null && group.isEmpty()) {
+            groupEntities.remove(groupId);
+        }
+    }
+
     /**
      * gets the entity with the specified id
      * @param id
@@ -348,7 +559,7 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         Object obj = object.getUserObject();
         if (obj instanceof Spatial) {
             Spatial spatial = (Spatial) obj;
-            if (entities.containsValue(spatial)) {
+            if (getEntityId(spatial) != -1) {
                 return spatial;
             }
         }
@@ -361,11 +572,10 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
      * @return
      */
     public long getEntityId(Spatial entity) {
-        for (Iterator<Entry<Long, Spatial>> it = entities.entrySet().iterator(); it.hasNext();) {
-            Entry<Long, Spatial> entry = it.next();
-            if (entry.getValue() == entity) {
-                return entry.getKey();
-            }
+        //the id is stored in the entity when it is added, check it still belongs to it
+        Long id = entity.getUserData("entity_id");
+        if (id != null && entities.get(id) == entity) {
+            return id;
         }
         return -1;
     }
@@ -394,13 +604,9 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
      * @return
      */
     public long addNewEntity(String modelIdentifier, Vector3f location, Quaternion rotation) {
-//        long id = 0;
-//        while (entities.containsKey(id)) {
-//            id++;
-//        }
-        newId++;
-        addEntity(newId, modelIdentifier, location, rotation);
-        return newId;
+        long id = idAllocator.allocate();
+        addEntity(id, modelIdentifier, location, rotation);
+        return id;
     }
 
     /**
@@ -428,6 +634,7 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         entityModel.setUserData("player_id", -1l);
         entityModel.setUserData("group_id", -1);
         entityModel.setUserData("entity_id", id);
+        addNavMeshObstacle(id, entityModel, location, rotation);
         entities.put(id, entityModel);
         syncManager.addObject(id, entityModel);
         space.addAll(entityModel);
@@ -446,24 +653,29 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
             syncManager.broadcast(new ServerRemoveEntityMessage(id));
         }
         syncManager.removeObject(id);
+        idAllocator.release(id);
         Spatial spat = entities.remove(id);
         if (spat == null) {
             Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "try removing entity thats not there: {0}", id);
             return;
         }
         Long playerId = (Long) spat.getUserData("player_id");
+        removeGroupEntity(id, spat);
         removeTransientControls(spat);
         removeAIControls(spat);
         if (playerId == myPlayerId) {
             removeUserControls(spat);
         }
         if (playerId != -1) {
-            PlayerData.setData(playerId, "entity_id", -1);
+            PlayerData.setData(playerId, PlayerData.ENTITY_ID, -1);
         }
         //TODO: removing from aiManager w/o checking if necessary
         if (!isServer()) {
             commandInterface.removePlayerEntity(playerId);
         }
+        if (navMeshTiles != null) {
+            navMeshTiles.removeObstacle(id);
+        }
         spat.removeFromParent();
         space.removeAll(spat);
     }
@@ -479,6 +691,9 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
             syncManager.broadcast(new ServerDisableEntityMessage(id));
         }
         Spatial spat = getEntity(id);
+        if (navMeshTiles != null) {
+            navMeshTiles.removeObstacle(id);
+        }
         spat.removeFromParent();
         space.removeAll(spat);
     }
@@ -497,10 +712,45 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         }
         Spatial spat = getEntity(id);
         setEntityTranslation(spat, location, rotation);
+        addNavMeshObstacle(id, spat, location, rotation);
         worldRoot.attachChild(spat);
         space.addAll(spat);
     }
 
+    /**
+     * blocks the NavMesh under entities with static physics, e.g. houses,
+     * so that the AI paths go around them. Needs the tiles that
+     * createNavMesh() creates, static entities that are added before it are
+     * not blocked. The entity must not be attached.
+     * @param id
+     * @param entityModel
+     * @param location
+     * @param rotation
+     */
+    private void addNavMeshObstacle(long id, Spatial entityModel, Vector3f location, Quaternion rotation) {
+        RigidBodyControl control = entityModel.getControl(RigidBodyControl.class);
+        if (control == null || control.getMass() != 0) {
+            return;
+        }
+        if (navMeshTiles == null) {
+            Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "No NavMesh to block for static entity {0}, createNavMesh() has to be called before entities are added", id);
+            return;
+        }
+        //the bounds need the transform, the physics moves the spatial to
+        //the location on the next update anyway
+        entityModel.setLocalTransform(new Transform(location, rotation, entityModel.getLocalScale()));
+        entityModel.updateGeometricState();
+        BoundingVolume bound = entityModel.getWorldBound();
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            navMeshTiles.addObstacle(id, box.getMin(null), box.getMax(null));
+        } else if (bound instanceof BoundingSphere) {
+            float radius = ((BoundingSphere) bound).getRadius();
+            Vector3f center = bound.getCenter();
+            navMeshTiles.addObstacle(id, center.subtract(radius, radius, radius), center.add(radius, radius, radius));
+        }
+    }
+
     /**
      * sets the translation of an entity based on its type
      * @param entityModel
@@ -533,12 +783,13 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         if (isServer()) {
             syncManager.broadcast(new ServerEnterEntityMessage(playerId, entityId));
         }
-        long curEntity = PlayerData.getLongData(playerId, "entity_id");
-        int groupId = PlayerData.getIntData(playerId, "group_id");
+        long curEntity = PlayerData.getLongData(playerId, PlayerData.ENTITY_ID);
+        int groupId = PlayerData.getIntData(playerId, PlayerData.GROUP_ID);
         //reset current entity
         if (curEntity != -1) {
             Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Player {0} exiting current entity {1}", new Object[]{playerId, curEntity});
             Spatial curEntitySpat = getEntity(curEntity);
+            removeGroupEntity(curEntity, curEntitySpat);
             curEntitySpat.setUserData("player_id", -1l);
             curEntitySpat.setUserData("group_id", -1);
             removeTransientControls(curEntitySpat);
@@ -547,12 +798,14 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
                 removeUserControls(curEntitySpat);
             }
         }
-        PlayerData.setData(playerId, "entity_id", entityId);
+        PlayerData.setData(playerId, PlayerData.ENTITY_ID, entityId);
         //if we entered an entity, configure its controls, id -1 means enter no entity
         if (entityId != -1) {
             Spatial spat = getEntity(entityId);
+            removeGroupEntity(entityId, spat);
             spat.setUserData("player_id", playerId);
             spat.setUserData("group_id", groupId);
+            addGroupEntity(groupId, entityId, spat);
             if (PlayerData.isHuman(playerId)) {
                 if (groupId == getMyGroupId()) { //only true on clients
                     makeManualControl(entityId, client);
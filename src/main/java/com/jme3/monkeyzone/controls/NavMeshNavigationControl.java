@@ -35,11 +35,17 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.monkeyzone.WorldManager;
 import jme3tools.navmesh.NavMeshPathfinder;
+import com.jme3.math.Vector3f;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.control.Control;
 import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jme3tools.navmesh.Path;
+import jme3tools.navmesh.PathfindingService;
 
 
 /**
@@ -50,8 +56,28 @@ import java.io.IOException;
  */
 public class NavMeshNavigationControl extends NavMeshPathfinder implements NavigationControl{
 
+    private PathfindingService pathfindingService;
+    private Future<Path> pendingPath;
+
     public NavMeshNavigationControl(WorldManager world) {
         super(world.getNavMesh());
+        this.pathfindingService = world.getPathfindingService();
+    }
+
+    /**
+     * computes the path to the goal on the pathfinding threads, the path is
+     * applied in the next update after it was found
+     * @param goal
+     */
+    public void requestPath(Vector3f goal) {
+        if (pendingPath != null) {
+            pendingPath.cancel(false);
+        }
+        pendingPath = computePathAsync(pathfindingService, goal);
+    }
+
+    public boolean isPathPending() {
+        return pendingPath != null;
     }
 
     public void setSpatial(Spatial spatial) {
@@ -65,6 +91,17 @@ public class NavMeshNavigationControl extends NavMeshPathfinder implements Navig
     }
 
     public void update(float tpf) {
+        if (pendingPath != null && pendingPath.isDone()) {
+            try {
+                if (!pendingPath.isCancelled()) {
+                    setPath(pendingPath.get());
+                }
+            } catch (Exception ex) {
+                Logger.getLogger(NavMeshNavigationControl.class.getName()).log(Level.WARNING, "Pathfinding failed: {0}", ex);
+                clearPath();
+            }
+            pendingPath = null;
+        }
     }
 
     public void render(RenderManager rm, ViewPort vp) {
@@ -53,6 +53,15 @@ public interface NavigationControl extends Control {
 
     public boolean computePath(Vector3f goal);
 
+    /**
+     * computes the path to the goal in the background, the path is used
+     * once it is found, until then isPathPending() returns true
+     * @param goal
+     */
+    public void requestPath(Vector3f goal);
+
+    public boolean isPathPending();
+
     public void clearPath();
 
     public Vector3f getWaypointPosition();
@@ -61,8 +70,22 @@ public interface NavigationControl extends Control {
 
     public float getDistanceToWaypoint();
 
+    /**
+     * resolves the movement on the NavMesh
+     * @param moveVec
+     * @return the new position, the vector is reused by the next call
+     */
     public Vector3f onMove(Vector3f moveVec);
 
+    /**
+     * resolves the movement on the NavMesh without creating objects
+     * @param moveVec
+     * @param store the vector to store the new position in
+     * @return store
+     */
+
+    public Vector3f onMove(Vector3f moveVec, Vector3f store);
+
     public boolean isAtGoalWaypoint();
 
     public void gotoToNextWaypoint();
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.HostedConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server side sync data stored for each connected client, contains the
+ * states sent to the client for each synced object for delta compression, the
+ * send priorities of the objects, the
+ * ids of the objects sent in the last batches and the messages batched for
+ * the client in the current sync tick.
+ * @author normenhansen
+ */
+class ConnectionSyncState {
+
+    static final String ATTRIBUTE = "PhysicsSyncState";
+    LongMap<SyncStateHistory> histories = new LongMap<SyncStateHistory>();
+    LongMap<SyncPriority> priorities = new LongMap<SyncPriority>();
+    ArrayList<PhysicsSyncMessage> batch = new ArrayList<PhysicsSyncMessage>();
+    /**
+     * sequence of the last batch sent to the client
+     */
+    int sequence;
+    private final int[] sentSequences = new int[SyncStateHistory.SIZE];
+    private final long[][] sentIds = new long[SyncStateHistory.SIZE][];
+
+    /**
+     * stores the ids of the objects sent in the batch with the given sequence
+     * @param sequence
+     * @param messages
+     */
+    void sent(int sequence, List<PhysicsSyncMessage> messages) {
+        int slot = sequence & (SyncStateHistory.SIZE - 1);
+        long[] ids = new long[messages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = messages.get(i).syncId;
+        }
+        sentSequences[slot] = sequence;
+        sentIds[slot] = ids;
+    }
+
+    /**
+     * marks the states sent in the batch with the given sequence as
+     * received by the client
+     * @param sequence
+     */
+    void acknowledge(int sequence) {
+        int slot = sequence & (SyncStateHistory.SIZE - 1);
+        long[] ids = sentIds[slot];
+        if (sentSequences[slot] != sequence || ids == null) {
+            return;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            SyncStateHistory history = histories.get(ids[i]);
+            if (history != null && history.get(sequence) != null && sequence - history.ackedSequence > 0) {
+                history.ackedSequence = sequence;
+            }
+        }
+    }
+
+    /**
+     * gets the sync state of a connection, creates it if not existing
+     * @param connection
+     * @return
+     */
+    static ConnectionSyncState get(HostedConnection connection) {
+        ConnectionSyncState state = connection.getAttribute(ATTRIBUTE);
+        if (state == null) {
+            state = new ConnectionSyncState();
+            connection.setAttribute(ATTRIBUTE, state);
+        }
+        return state;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+/**
+ * Allocates long ids made of an index (lower 32 bits) and a generation (upper
+ * 32 bits). Released indices are reused from a free list in O(1) with the next
+ * generation, so an old id never matches the object that got the index later.
+ * Generations start at 1 so all ids are positive and never collide with
+ * negative ids used for special sync objects.
+ * @author normenhansen
+ */
+public class IdAllocator {
+
+    private int[] generations = new int[16];
+    private boolean[] used = new boolean[16];
+    private int[] freeIndices = new int[16];
+    private int freeCount = 0;
+    private int nextIndex = 0;
+
+    public static int getIndex(long id) {
+        return (int) id;
+    }
+
+    public static int getGeneration(long id) {
+        return (int) (id >>> 32);
+    }
+
+    private static long toId(int index, int generation) {
+        return ((long) generation << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    /**
+     * allocates a new id, reusing a released index if possible
+     * @return
+     */
+    public synchronized long allocate() {
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            index = nextIndex++;
+            if (index == generations.length) {
+                int[] newGenerations = new int[index * 2];
+                boolean[] newUsed = new boolean[index * 2];
+                System.arraycopy(generations, 0, newGenerations, 0, index);
+                System.arraycopy(used, 0, newUsed, 0, index);
+                generations = newGenerations;
+                used = newUsed;
+            }
+            generations[index] = 1;
+        }
+        used[index] = true;
+        return toId(index, generations[index]);
+    }
+
+    /**
+     * checks if the id is currently allocated
+     * @param id
+     * @return false if the id was released or never allocated
+     */
+    public synchronized boolean isValid(long id) {
+        int index = getIndex(id);
+        return index >= 0 && index < nextIndex && used[index] && generations[index] == getGeneration(id);
+    }
+
+    /**
+     * releases the id, its index is reused with the next generation
+     * @param id
+     * @return false if the id was not allocated
+     */
+    public synchronized boolean release(long id) {
+        if (!isValid(id)) {
+            return false;
+        }
+        free(getIndex(id));
+        return true;
+    }
+
+    /**
+     * releases all allocated ids
+     */
+    public synchronized void releaseAll() {
+        for (int i = 0; i < nextIndex; i++) {
+            if (used[i]) {
+                free(i);
+            }
+        }
+    }
+
+    private void free(int index) {
+        used[index] = false;
+        generations[index] = generations[index] == Integer.MAX_VALUE ? 1 : generations[index] + 1;
+        if (freeCount == freeIndices.length) {
+            int[] newFree = new int[freeCount * 2];
+            System.arraycopy(freeIndices, 0, newFree, 0, freeCount);
+            freeIndices = newFree;
+        }
+        freeIndices[freeCount++] = index;
+    }
+}
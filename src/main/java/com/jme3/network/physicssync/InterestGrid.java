@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Uniform grid on the x/z plane over the sync objects of one sync tick, used to
+ * find the objects within the relevance radius of an observer without checking
+ * all objects.
+ * @author normenhansen
+ */
+class InterestGrid {
+
+    private float cellSize = 100;
+    private HashMap<Long, ArrayList<SyncObjectData>> cells = new HashMap<Long, ArrayList<SyncObjectData>>();
+
+    /**
+     * removes all objects, keeps the cell lists for reuse
+     * @param cellSize
+     */
+    void clear(float cellSize) {
+        if (this.cellSize != cellSize) {
+            this.cellSize = cellSize;
+            cells.clear();
+            return;
+        }
+        for (Iterator<ArrayList<SyncObjectData>> it = cells.values().iterator(); it.hasNext();) {
+            it.next().clear();
+        }
+    }
+
+    void add(SyncObjectData data) {
+        long key = getKey(getCell(data.location.x), getCell(data.location.z));
+        ArrayList<SyncObjectData> list = cells.get(key);
+        if (list == null) {
+            list = new ArrayList<SyncObjectData>();
+            cells.put(key, list);
+        }
+        list.add(data);
+    }
+
+    /**
+     * adds all objects within radius of location that are not marked with
+     * stamp yet to the store list and marks them
+     * @param location
+     * @param radius
+     * @param stamp
+     * @param store
+     */
+    void query(Vector3f location, float radius, int stamp, List<SyncObjectData> store) {
+        int minX = getCell(location.x - radius);
+        int maxX = getCell(location.x + radius);
+        int minZ = getCell(location.z - radius);
+        int maxZ = getCell(location.z + radius);
+        float radiusSquared = radius * radius;
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                ArrayList<SyncObjectData> list = cells.get(getKey(x, z));
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    SyncObjectData data = list.get(i);
+                    if (data.interestStamp != stamp) {
+                        float dx = data.location.x - location.x;
+                        float dz = data.location.z - location.z;
+                        if (dx * dx + dz * dz <= radiusSquared) {
+                            data.interestStamp = stamp;
+                            store.add(data);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private int getCell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long getKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
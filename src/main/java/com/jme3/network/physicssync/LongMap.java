@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Map with primitive long keys using open addressing with linear probing,
+ * get, put and remove don't allocate (put only when the map grows). Null
+ * values are not allowed. The iterator reuses one entry object, entries are
+ * only valid until the next call to next().
+ * @author normenhansen
+ */
+public final class LongMap<T> implements Iterable<LongMap.Entry<T>> {
+
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+    private int mask;
+    private int threshold;
+
+    public LongMap() {
+        this(16);
+    }
+
+    public LongMap(int initialCapacity) {
+        int capacity = 4;
+        while (capacity * 3 / 4 < initialCapacity) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * creates a copy of the given map
+     * @param map
+     */
+    public LongMap(LongMap<T> map) {
+        keys = map.keys.clone();
+        values = map.values.clone();
+        size = map.size;
+        mask = map.mask;
+        threshold = map.threshold;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = capacity * 3 / 4;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int indexOf(long key) {
+        int index = hash(key) & mask;
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long key) {
+        int index = indexOf(key);
+        return index == -1 ? null : (T) values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) != -1;
+    }
+
+    /**
+     * puts the value in the map
+     * @param key
+     * @param value
+     * @return the previous value for the key or null
+     */
+    @SuppressWarnings("unchecked")
+    public T put(long key, T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("LongMap does not allow null values");
+        }
+        int index = hash(key) & mask;
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                T old = (T) values[index];
+                values[index] = value;
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * removes the value with the given key, moves following entries of the
+     * probe sequence back so no deleted markers are needed
+     * @param key
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public T remove(long key) {
+        int index = indexOf(key);
+        if (index == -1) {
+            return null;
+        }
+        T old = (T) values[index];
+        size--;
+        int next = (index + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            //move the entry to the free slot if the slot is between its home and its position
+            if (((next - home) & mask) >= ((next - index) & mask)) {
+                keys[index] = keys[next];
+                values[index] = values[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[index] = null;
+        return old;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int index = hash(oldKeys[i]) & mask;
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return a new array with all keys of the map
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                result[count++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    public Iterator<Entry<T>> iterator() {
+        return new LongMapIterator();
+    }
+
+    /**
+     * key/value pair returned by the iterator
+     */
+    public static final class Entry<T> {
+
+        private long key;
+        private T value;
+
+        public long getKey() {
+            return key;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    private final class LongMapIterator implements Iterator<Entry<T>> {
+
+        private final Entry<T> entry = new Entry<T>();
+        private int index = 0;
+        private int remaining = size;
+
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Entry<T> next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            while (values[index] == null) {
+                index++;
+            }
+            entry.key = keys[index];
+            entry.value = (T) values[index];
+            index++;
+            remaining--;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Removing while iterating is not supported by LongMap");
+        }
+    }
+}
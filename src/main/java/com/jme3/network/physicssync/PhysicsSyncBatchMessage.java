@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.serializing.Serializable;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Packs all sync messages the server creates in one sync tick into one
+ * network message, the contained messages share the time stamp of the batch.
+ * Unpacked by the PhysicsSyncManager on the client. Sent unreliable, the
+ * sequence number increases with every batch sent to a client so that old
+ * states arriving late can be dropped.
+ * @author normenhansen
+ */
+@Serializable()
+public class PhysicsSyncBatchMessage extends PhysicsSyncMessage {
+
+    public PhysicsSyncMessage[] messages;
+    public int sequence;
+    /**
+     * true if the client should answer with a SyncAckMessage
+     */
+    public boolean acknowledge;
+
+    public PhysicsSyncBatchMessage() {
+        setReliable(false);
+    }
+
+    public PhysicsSyncBatchMessage(List<PhysicsSyncMessage> messages, int sequence, boolean acknowledge) {
+        setReliable(false);
+        this.sequence = sequence;
+        this.acknowledge = acknowledge;
+        this.messages = messages.toArray(new PhysicsSyncMessage[messages.size()]);
+    }
+
+    @Override
+    public void applyData(Object object) {
+        Logger.getLogger(PhysicsSyncBatchMessage.class.getName()).log(Level.WARNING, "Batch message applied without unpacking");
+    }
+}
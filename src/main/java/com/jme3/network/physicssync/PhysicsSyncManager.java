@@ -37,27 +37,51 @@ import com.jme3.bullet.control.CharacterControl;
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.bullet.control.VehicleControl;
 import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
 import com.jme3.network.Server;
 import com.jme3.network.Client;
 import com.jme3.network.HostedConnection;
 import com.jme3.network.Message;
 import com.jme3.network.MessageListener;
 import com.jme3.scene.Spatial;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * <p>Handles syncing of physics enabled server/client games. Puts messages in a queue
- * and executes them based on server time stamp plus an offset on the client.
+ * ordered by time stamp and executes them based on server time stamp plus an
+ * offset on the client. When multiple state messages for the same object are
+ * due in one frame only the newest one is executed. With interpolation enabled
+ * the states of rigid bodies and characters are not executed directly but
+ * interpolated between the last snapshots of each object every frame.
  * The offset is calculated for each arriving message, if the time offset change
  * is bigger than maxDelay or smaller than zero (the message would be played either
  * very late or has happened already) then the offset time is adjusted.</p>
- * <p></p>
+ * <p>With delta compression enabled the server keeps the last state each client
+ * has got for every object and only sends the quantized changes to it, objects
+ * that did not move more than deltaEpsilon are not sent at all.</p>
+ * <p>When the sync messages are registered with a SyncMessageSerializer the
+ * state is reduced to the sent precision before it is used as delta baseline,
+ * so that server and client baselines stay equal.</p>
+ * <p>All sync data of one sync tick is sent to each client packed in
+ * unreliable PhysicsSyncBatchMessages. The client drops states that are older
+ * than the last state it got for the same object. With delta compression the
+ * client acknowledges each batch and deltas are only created against states
+ * the client has acknowledged, so lost batches don't break the baselines.</p>
+ * <p>When a SyncInterestProvider is set, clients only get the objects within
+ * interestRadius of their observer locations each tick, all other objects are
+ * sent every farSyncInterval ticks.</p>
+ * <p>With a byte budget set each client gets the objects with the highest
+ * accumulated priority until the budget of the tick is used up, objects that
+ * are not sent keep their priority and grow until they are sent.</p>
  * @author normenhansen
  */
 public class PhysicsSyncManager extends AbstractAppState implements MessageListener {
@@ -66,12 +90,52 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
     private Client client;
     private float syncFrequency = 0.25f;
     LinkedList<SyncMessageValidator> validators = new LinkedList<SyncMessageValidator>();
-    HashMap<Long, Object> syncObjects = new HashMap<Long, Object>();
+    LongMap<Object> syncObjects = new LongMap<Object>();
+    IdentityHashMap<Object, Long> syncIds = new IdentityHashMap<Object, Long>();
+    /**
+     * the newest generation of each id index that was removed, messages for
+     * ids of that or an older generation belong to removed objects
+     */
+    private int[] removedGenerations = new int[16];
     double time = 0;
     double offset = Double.MIN_VALUE;
     private double maxDelay = 0.50;
     float syncTimer = 0;
-    LinkedList<PhysicsSyncMessage> messageQueue = new LinkedList<PhysicsSyncMessage>();
+    SyncMessageBuffer messageQueue = new SyncMessageBuffer();
+    private int maxQueueSize = 1024;
+    private ArrayList<PhysicsSyncMessage> dueMessages = new ArrayList<PhysicsSyncMessage>();
+    /**
+     * ids of the state messages found while deduplicating the due messages,
+     * the values are not used
+     */
+    private LongMap<Boolean> dueStateIds = new LongMap<Boolean>();
+    private boolean interpolation = false;
+    LongMap<SyncSnapshotBuffer> snapshots = new LongMap<SyncSnapshotBuffer>();
+    private boolean deltaCompression = false;
+    private float deltaEpsilon = 0.005f;
+    LongMap<SyncStateHistory> histories = new LongMap<SyncStateHistory>();
+    ArrayList<PhysicsSyncMessage> syncBatch = new ArrayList<PhysicsSyncMessage>();
+    int syncSequence = 0;
+    private int maxBatchSize = 24;
+    private SyncInterestProvider interestProvider;
+    private float interestRadius = 100;
+    private int farSyncInterval = 4;
+    private InterestGrid interestGrid = new InterestGrid();
+    private ArrayList<SyncObjectData> syncData = new ArrayList<SyncObjectData>();
+    private ArrayList<SyncObjectData> farSyncData = new ArrayList<SyncObjectData>();
+    private ArrayList<SyncObjectData> relevantData = new ArrayList<SyncObjectData>();
+    private ArrayList<Vector3f> observers = new ArrayList<Vector3f>();
+    private int interestStamp = 0;
+    private int byteBudget = 0;
+    private float speedPriority = 0.1f;
+    private float changePriority = 1;
+    private static final Comparator<SyncObjectData> PRIORITY_COMPARATOR = new Comparator<SyncObjectData>() {
+
+        public int compare(SyncObjectData o1, SyncObjectData o2) {
+            return Float.compare(o2.priority, o1.priority);
+        }
+    };
+    long syncTick = 0;
     Application app;
 
     public PhysicsSyncManager(Application app, Server server) {
@@ -97,12 +161,14 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
             time = 0;
         }
         if (client != null) {
-            for (Iterator<PhysicsSyncMessage> it = messageQueue.iterator(); it.hasNext();) {
-                PhysicsSyncMessage message = it.next();
-                if (message.time >= time + offset) {
-                    doMessage(message);
-                    it.remove();
-                }
+            PhysicsSyncMessage message = messageQueue.peek();
+            while (message != null && message.time + offset <= time) {
+                dueMessages.add(messageQueue.poll());
+                message = messageQueue.peek();
+            }
+            doDueMessages();
+            if (interpolation) {
+                applySnapshots();
             }
         } else if (server != null) {
             syncTimer += tpf;
@@ -119,7 +185,15 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
      * @param object
      */
     public void addObject(long id, Object object) {
-        syncObjects.put(id, object);
+        Object old = syncObjects.put(id, object);
+        if (old != null && old != object) {
+            syncIds.remove(old);
+        }
+        Long oldId = syncIds.put(object, id);
+        //the object was registered under another id before, messages for that id must not apply to it anymore
+        if (oldId != null && oldId != id) {
+            syncObjects.remove(oldId);
+        }
     }
 
     /**
@@ -127,12 +201,11 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
      * @param object
      */
     public void removeObject(Object object) {
-        for (Iterator<Entry<Long, Object>> it = syncObjects.entrySet().iterator(); it.hasNext();) {
-            Entry<Long, Object> entry = it.next();
-            if (entry.getValue() == object) {
-                it.remove();
-                return;
-            }
+        Long id = syncIds.remove(object);
+        if (id != null) {
+            syncObjects.remove(id);
+            removeHistories(id);
+            setRemoved(id);
         }
     }
 
@@ -141,11 +214,115 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
      * @param id
      */
     public void removeObject(long id) {
-        syncObjects.remove(id);
+        Object object = syncObjects.remove(id);
+        if (object != null) {
+            syncIds.remove(object);
+        }
+        removeHistories(id);
+        setRemoved(id);
     }
 
     public void clearObjects() {
+        long[] ids = syncObjects.keys();
+        for (int i = 0; i < ids.length; i++) {
+            setRemoved(ids[i]);
+        }
         syncObjects.clear();
+        syncIds.clear();
+        histories.clear();
+        snapshots.clear();
+        if (server != null) {
+            for (HostedConnection connection : server.getConnections()) {
+                ConnectionSyncState syncState = ConnectionSyncState.get(connection);
+                syncState.histories.clear();
+                syncState.priorities.clear();
+            }
+        }
+    }
+
+    /**
+     * remembers the generation of the removed id for its index, ids that
+     * were not allocated by an IdAllocator are ignored
+     * @param id
+     */
+    private void setRemoved(long id) {
+        int index = IdAllocator.getIndex(id);
+        int generation = IdAllocator.getGeneration(id);
+        if (index < 0 || generation < 1) {
+            return;
+        }
+        if (index >= removedGenerations.length) {
+            int[] newGenerations = new int[Math.max(index + 1, removedGenerations.length * 2)];
+            System.arraycopy(removedGenerations, 0, newGenerations, 0, removedGenerations.length);
+            removedGenerations = newGenerations;
+        }
+        removedGenerations[index] = Math.max(removedGenerations[index], generation);
+    }
+
+    /**
+     * checks if the id belongs to an object that has been removed, that is
+     * an object with the same or a newer generation at its index was removed
+     * @param id
+     * @return
+     */
+    private boolean isRemoved(long id) {
+        int index = IdAllocator.getIndex(id);
+        int generation = IdAllocator.getGeneration(id);
+        return index >= 0 && index < removedGenerations.length && generation >= 1
+                && generation <= removedGenerations[index];
+    }
+
+    /**
+     * removes the stored states of the object with the given id
+     * @param id
+     */
+    private void removeHistories(long id) {
+        histories.remove(id);
+        snapshots.remove(id);
+        if (server != null) {
+            for (HostedConnection connection : server.getConnections()) {
+                ConnectionSyncState syncState = ConnectionSyncState.get(connection);
+                syncState.histories.remove(id);
+                syncState.priorities.remove(id);
+            }
+        }
+    }
+
+    /**
+     * executes the messages that are due in this frame in order, state
+     * messages are skipped when a newer state for the same object is due too
+     */
+    private void doDueMessages() {
+        if (dueMessages.size() > 1) {
+            for (int i = dueMessages.size() - 1; i >= 0; i--) {
+                PhysicsSyncMessage message = dueMessages.get(i);
+                if (isStateMessage(message)) {
+                    if (dueStateIds.containsKey(message.syncId)) {
+                        dueMessages.set(i, null);
+                    } else {
+                        dueStateIds.put(message.syncId, Boolean.TRUE);
+                    }
+                }
+            }
+            dueStateIds.clear();
+        }
+        for (int i = 0; i < dueMessages.size(); i++) {
+            PhysicsSyncMessage message = dueMessages.get(i);
+            if (message != null) {
+                doMessage(message);
+            }
+        }
+        dueMessages.clear();
+    }
+
+    /**
+     * checks if the message only contains the physics state of an object,
+     * these can be replaced by newer messages for the same object
+     * @param message
+     * @return
+     */
+    private boolean isStateMessage(PhysicsSyncMessage message) {
+        return message instanceof SyncRigidBodyMessage || message instanceof SyncCharacterMessage;
     }
 
     /**
@@ -156,6 +333,9 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
         Object object = syncObjects.get(message.syncId);
         if (object != null) {
             message.applyData(object);
+        } else if (isRemoved(message.syncId)) {
+            //the message was sent before the object was removed, its index may already be reused with a newer generation
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.FINE, "Dropping message for stale id: ({0}){1}", new Object[]{message.syncId, message});
         } else {
             Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.WARNING, "Cannot find physics object for: ({0}){1}", new Object[]{message.syncId, message});
         }
@@ -167,6 +347,14 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
      * @param message
      */
     protected void enqueueMessage(PhysicsSyncMessage message) {
+        if (message instanceof PhysicsSyncBatchMessage) {
+            enqueueBatch((PhysicsSyncBatchMessage) message);
+            return;
+        }
+        if (message instanceof SyncDeltaMessage) {
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.WARNING, "Delta message received outside of batch: {0}", message.syncId);
+            return;
+        }
         if (offset == Double.MIN_VALUE) {
             offset = this.time - message.time;
             Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.INFO, "Initial offset {0}", offset);
@@ -179,15 +367,186 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
             offset -= delayTime;
             Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.INFO, "Increase offset due to low delaytime ({0})", delayTime);
         }
+        if (interpolation && isStateMessage(message)) {
+            addSnapshot(message);
+            return;
+        }
         messageQueue.add(message);
+        if (messageQueue.size() > maxQueueSize) {
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.FINE, "Message queue full, executing oldest message early");
+            doMessage(messageQueue.poll());
+        }
     }
 
     /**
-     * sends sync data for all active physics objects
+     * stores the state of a rigid body or character message in the snapshot
+     * buffer of its object
+     * @param message
+     */
+    private void addSnapshot(PhysicsSyncMessage message) {
+        SyncSnapshotBuffer buffer = snapshots.get(message.syncId);
+        if (message instanceof SyncRigidBodyMessage) {
+            if (buffer == null) {
+                buffer = new SyncSnapshotBuffer(new SyncRigidBodyMessage());
+                snapshots.put(message.syncId, buffer);
+            }
+            buffer.add(message.time, ((SyncRigidBodyMessage) message).writeState(new float[SyncRigidBodyMessage.STATE_SIZE]));
+        } else {
+            if (buffer == null) {
+                buffer = new SyncSnapshotBuffer(new SyncCharacterMessage());
+                snapshots.put(message.syncId, buffer);
+            }
+            buffer.add(message.time, ((SyncCharacterMessage) message).writeState(new float[SyncCharacterMessage.STATE_SIZE]));
+        }
+    }
+
+    /**
+     * applies the interpolated states for the current render time to all
+     * objects with snapshots
+     */
+    private void applySnapshots() {
+        double renderTime = time - offset;
+        for (Iterator<LongMap.Entry<SyncSnapshotBuffer>> it = snapshots.iterator(); it.hasNext();) {
+            LongMap.Entry<SyncSnapshotBuffer> entry = it.next();
+            Object object = syncObjects.get(entry.getKey());
+            if (object != null) {
+                entry.getValue().apply(object, renderTime);
+            }
+        }
+    }
+
+    /**
+     * unpacks a batch message and enqueues the contained messages that are
+     * newer than the last message for the same object, acknowledges the batch
+     * if requested
+     * @param batch
+     */
+    private void enqueueBatch(PhysicsSyncBatchMessage batch) {
+        boolean complete = true;
+        PhysicsSyncMessage[] messages = batch.messages;
+        for (int i = 0; i < messages.length; i++) {
+            PhysicsSyncMessage message = messages[i];
+            message.time = batch.time;
+            SyncStateHistory history = histories.get(message.syncId);
+            if (history == null) {
+                history = new SyncStateHistory(batch.sequence);
+                histories.put(message.syncId, history);
+            }
+            //check before storing the state, old states are still stored as they can be used as baseline
+            boolean newer = history.isNewer(batch.sequence);
+            if (message instanceof SyncDeltaMessage) {
+                message = resolveDelta((SyncDeltaMessage) message, history, batch.sequence, newer);
+                if (message == null) {
+                    complete = false;
+                    continue;
+                }
+            } else if (message instanceof SyncRigidBodyMessage) {
+                history.put(batch.sequence, ((SyncRigidBodyMessage) message).writeState(new float[SyncRigidBodyMessage.STATE_SIZE]));
+            } else if (message instanceof SyncCharacterMessage) {
+                history.put(batch.sequence, ((SyncCharacterMessage) message).writeState(new float[SyncCharacterMessage.STATE_SIZE]));
+            }
+            if (newer) {
+                enqueueMessage(message);
+            } else {
+                Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.FINE, "Dropping old sync message for: {0}", message.syncId);
+            }
+        }
+        //only acknowledge when all states could be stored, the server will use them as baseline
+        if (batch.acknowledge && complete && client != null) {
+            client.send(new SyncAckMessage(batch.sequence));
+        }
+    }
+
+    /**
+     * applies a delta message to its baseline from the history of its object,
+     * stores the result in the history and creates the full sync message from it
+     * @param message
+     * @param history
+     * @param sequence
+     * @param newer false if the message is older than the last applied one,
+     * the baseline might already be gone then
+     * @return the full message or null if the baseline is not available
+     */
+    private PhysicsSyncMessage resolveDelta(SyncDeltaMessage message, SyncStateHistory history, int sequence, boolean newer) {
+        float[] baseline = history.get(message.baseSequence);
+        if (baseline == null) {
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(newer ? Level.WARNING : Level.FINE, "Cannot find baseline {0} for delta message: {1}", new Object[]{message.baseSequence, message.syncId});
+            return null;
+        }
+        float[] state = baseline.clone();
+        message.decode(state);
+        history.put(sequence, state);
+        return message.createFullMessage(state);
+    }
+
+    /**
+     * sends sync data for all active physics objects, batched into one
+     * message per client
      */
     protected void sendSyncData() {
-        for (Iterator<Entry<Long, Object>> it = syncObjects.entrySet().iterator(); it.hasNext();) {
-            Entry<Long, Object> entry = it.next();
+        syncTick++;
+        collectSyncData();
+        if (interestProvider == null && !deltaCompression && byteBudget <= 0) {
+            for (int i = 0; i < syncData.size(); i++) {
+                syncBatch.add(syncData.get(i).message);
+            }
+            for (int i = 0; i < syncBatch.size(); i += maxBatchSize) {
+                broadcast(new PhysicsSyncBatchMessage(syncBatch.subList(i, Math.min(i + maxBatchSize, syncBatch.size())), ++syncSequence, false));
+            }
+            syncBatch.clear();
+            return;
+        }
+        for (HostedConnection connection : server.getConnections()) {
+            ConnectionSyncState syncState = ConnectionSyncState.get(connection);
+            selectRelevantData(connection, relevantData);
+            if (byteBudget > 0) {
+                prioritize(syncState, relevantData);
+            }
+            int bytes = 0;
+            for (int i = 0; i < relevantData.size(); i++) {
+                SyncObjectData data = relevantData.get(i);
+                int size = syncState.batch.size();
+                if (deltaCompression) {
+                    addDelta(syncState, data);
+                } else {
+                    syncState.batch.add(data.message);
+                }
+                if (byteBudget > 0) {
+                    if (syncState.batch.size() > size) {
+                        bytes += estimateSize(syncState.batch.get(size));
+                    }
+                    SyncPriority priority = syncState.priorities.get(data.id);
+                    priority.accumulated = 0;
+                    priority.location.set(data.location);
+                    if (bytes >= byteBudget) {
+                        break;
+                    }
+                }
+            }
+            relevantData.clear();
+            ArrayList<PhysicsSyncMessage> batch = syncState.batch;
+            for (int i = 0; i < batch.size(); i += maxBatchSize) {
+                List<PhysicsSyncMessage> messages = batch.subList(i, Math.min(i + maxBatchSize, batch.size()));
+                int sequence = ++syncState.sequence;
+                if (deltaCompression) {
+                    syncState.sent(sequence, messages);
+                }
+                send(connection, new PhysicsSyncBatchMessage(messages, sequence, deltaCompression));
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * creates the sync messages for all active physics objects and stores them
+     * in the syncData list and the interest grid
+     */
+    private void collectSyncData() {
+        syncData.clear();
+        farSyncData.clear();
+        interestGrid.clear(interestRadius);
+        for (Iterator<LongMap.Entry<Object>> it = syncObjects.iterator(); it.hasNext();) {
+            LongMap.Entry<Object> entry = it.next();
             if (entry.getValue() instanceof Spatial) {
                 Spatial spat = (Spatial) entry.getValue();
                 PhysicsRigidBody body = spat.getControl(RigidBodyControl.class);
@@ -196,18 +555,161 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
                 }
                 if (body != null && body.isActive()) {
                     SyncRigidBodyMessage msg = new SyncRigidBodyMessage(entry.getKey(), body);
-                    broadcast(msg);
+                    if (deltaCompression) {
+                        SyncMessageSerializer.quantize(msg);
+                    }
+                    float[] state = deltaCompression ? msg.writeState(new float[SyncRigidBodyMessage.STATE_SIZE]) : null;
+                    addSyncData(new SyncObjectData(entry.getKey(), msg, SyncDeltaMessage.TYPE_RIGID_BODY, state, msg.location, msg.linearVelocity.length()));
                     continue;
                 }
                 CharacterControl control = spat.getControl(CharacterControl.class);
                 if (control != null) {
                     SyncCharacterMessage msg = new SyncCharacterMessage(entry.getKey(), control);
-                    broadcast(msg);
+                    if (deltaCompression) {
+                        SyncMessageSerializer.quantize(msg);
+                    }
+                    float[] state = deltaCompression ? msg.writeState(new float[SyncCharacterMessage.STATE_SIZE]) : null;
+                    addSyncData(new SyncObjectData(entry.getKey(), msg, SyncDeltaMessage.TYPE_CHARACTER, state, msg.location, msg.walkDirection.length()));
                 }
             }
         }
     }
 
+    private void addSyncData(SyncObjectData data) {
+        syncData.add(data);
+        if (interestProvider != null) {
+            interestGrid.add(data);
+            //spread the reduced rate updates over the sync ticks
+            if ((syncTick + data.id) % farSyncInterval == 0) {
+                farSyncData.add(data);
+            }
+        }
+    }
+
+    /**
+     * selects the objects that should be sent to the client in this tick, that
+     * is all objects within interestRadius of the clients observers and the
+     * other objects every farSyncInterval ticks
+     * @param connection
+     * @param store
+     */
+    private void selectRelevantData(HostedConnection connection, ArrayList<SyncObjectData> store) {
+        observers.clear();
+        if (interestProvider != null) {
+            interestProvider.getObserverLocations(connection, observers);
+        }
+        if (observers.isEmpty()) {
+            store.addAll(syncData);
+            return;
+        }
+        int stamp = ++interestStamp;
+        for (int i = 0; i < observers.size(); i++) {
+            interestGrid.query(observers.get(i), interestRadius, stamp, store);
+        }
+        for (int i = 0; i < farSyncData.size(); i++) {
+            SyncObjectData data = farSyncData.get(i);
+            if (data.interestStamp != stamp) {
+                data.interestStamp = stamp;
+                store.add(data);
+            }
+        }
+    }
+
+    /**
+     * adds the priority of each object for this tick to its accumulated
+     * priority for the client and sorts the list by accumulated priority. The
+     * priority grows with speed, with the distance moved since the last state
+     * sent to the client and shrinks with the distance to the clients
+     * observers.
+     * @param syncState
+     * @param list
+     */
+    private void prioritize(ConnectionSyncState syncState, ArrayList<SyncObjectData> list) {
+        for (int i = 0; i < list.size(); i++) {
+            SyncObjectData data = list.get(i);
+            SyncPriority priority = syncState.priorities.get(data.id);
+            if (priority == null) {
+                priority = new SyncPriority(data.location);
+                syncState.priorities.put(data.id, priority);
+                //make sure new objects are sent first
+                priority.accumulated = Float.MAX_VALUE / 2;
+            }
+            float weight = 1 + data.speed * speedPriority + priority.location.distance(data.location) * changePriority;
+            if (!observers.isEmpty()) {
+                float distanceSquared = Float.MAX_VALUE;
+                for (int j = 0; j < observers.size(); j++) {
+                    distanceSquared = Math.min(distanceSquared, observers.get(j).distanceSquared(data.location));
+                }
+                weight /= 1 + (float) Math.sqrt(distanceSquared) / interestRadius;
+            }
+            priority.accumulated += weight;
+            data.priority = priority.accumulated;
+        }
+        Collections.sort(list, PRIORITY_COMPARATOR);
+    }
+
+    /**
+     * estimates the size of a sync message as written by the
+     * SyncMessageSerializer and the FieldSerializer for delta messages
+     * @param message
+     * @return
+     */
+    private int estimateSize(PhysicsSyncMessage message) {
+        if (message instanceof SyncDeltaMessage) {
+            return 33 + 2 * ((SyncDeltaMessage) message).values.length;
+        } else if (message instanceof SyncRigidBodyMessage) {
+            return 42;
+        } else {
+            return 36;
+        }
+    }
+
+    /**
+     * adds the object state to the batch of the client as delta against the
+     * last state the client acknowledged, as full message when there is no
+     * acknowledged state or the change is too big or not at all if the object
+     * did not move more than deltaEpsilon and all sent states are acknowledged
+     * @param syncState
+     * @param data
+     */
+    private void addDelta(ConnectionSyncState syncState, SyncObjectData data) {
+        //sequence of the batch the message will be sent in
+        int sequence = syncState.sequence + 1 + syncState.batch.size() / maxBatchSize;
+        SyncStateHistory history = syncState.histories.get(data.id);
+        if (history == null) {
+            history = new SyncStateHistory(sequence);
+            syncState.histories.put(data.id, history);
+        }
+        float[] baseline = history.get(history.ackedSequence);
+        if (baseline != null) {
+            if (history.lastSequence == history.ackedSequence && !hasChanged(baseline, data.state)) {
+                return;
+            }
+            SyncDeltaMessage msg = new SyncDeltaMessage(data.id, data.type, history.ackedSequence);
+            float[] state = baseline.clone();
+            if (msg.encode(state, data.state)) {
+                history.put(sequence, state);
+                syncState.batch.add(msg);
+                return;
+            }
+        }
+        history.put(sequence, data.state.clone());
+        syncState.batch.add(data.message);
+    }
+
+    /**
+     * checks if any component of the state differs more than deltaEpsilon
+     * from the baseline
+     */
+    private boolean hasChanged(float[] baseline, float[] state) {
+        for (int i = 0; i < state.length; i++) {
+            if (Math.abs(state[i] - baseline[i]) >= deltaEpsilon) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * use to broadcast physics control messages if server, applies timestamp to
      * PhysicsSyncMessage, call from OpenGL thread!
@@ -263,8 +765,20 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
         }
     }
 
-    public void messageReceived(Object source, final Message message) {
+    public void messageReceived(final Object source, final Message message) {
         assert (message instanceof PhysicsSyncMessage);
+        if (message instanceof SyncAckMessage) {
+            if (server != null) {
+                app.enqueue(new Callable<Void>() {
+
+                    public Void call() throws Exception {
+                        ConnectionSyncState.get((HostedConnection) source).acknowledge(((SyncAckMessage) message).sequence);
+                        return null;
+                    }
+                });
+            }
+            return;
+        }
         if (client != null) {
             app.enqueue(new Callable<Void>() {
 
@@ -322,4 +836,151 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
     public void setSyncFrequency(float syncFrequency) {
         this.syncFrequency = syncFrequency;
     }
+
+    public boolean isInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * enables interpolation of rigid body and character states between the
+     * last received snapshots on the client instead of setting each state when
+     * it is due
+     * @param interpolation
+     */
+    public void setInterpolation(boolean interpolation) {
+        this.interpolation = interpolation;
+        snapshots.clear();
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * sets the maximum number of messages waiting for execution on the client,
+     * when more messages arrive the oldest ones are executed early
+     * @param maxQueueSize
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * sets the maximum number of sync messages packed into one batch message
+     * @param maxBatchSize
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public SyncInterestProvider getInterestProvider() {
+        return interestProvider;
+    }
+
+    /**
+     * sets the provider for the observer locations of the clients, enables
+     * interest management when not null (server only)
+     * @param interestProvider
+     */
+    public void setInterestProvider(SyncInterestProvider interestProvider) {
+        this.interestProvider = interestProvider;
+    }
+
+    public float getInterestRadius() {
+        return interestRadius;
+    }
+
+    /**
+     * sets the radius around the observers of a client within which objects
+     * are sent to it every sync tick
+     * @param interestRadius
+     */
+    public void setInterestRadius(float interestRadius) {
+        this.interestRadius = interestRadius;
+    }
+
+    public int getFarSyncInterval() {
+        return farSyncInterval;
+    }
+
+    /**
+     * sets every how many sync ticks objects outside the interest radius are
+     * sent to a client, 1 sends them every tick
+     * @param farSyncInterval
+     */
+    public void setFarSyncInterval(int farSyncInterval) {
+        if (farSyncInterval < 1) {
+            throw new IllegalArgumentException("Far sync interval has to be at least 1: " + farSyncInterval);
+        }
+        this.farSyncInterval = farSyncInterval;
+    }
+
+    public int getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * sets the approximate number of bytes sent to each client per sync tick,
+     * objects are sent by accumulated priority until the budget is used up.
+     * Zero disables the budget and sends all objects each tick (server only).
+     * @param byteBudget
+     */
+    public void setByteBudget(int byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    public float getSpeedPriority() {
+        return speedPriority;
+    }
+
+    /**
+     * sets the priority added per sync tick for each unit of speed of an object
+     * @param speedPriority
+     */
+    public void setSpeedPriority(float speedPriority) {
+        this.speedPriority = speedPriority;
+    }
+
+    public float getChangePriority() {
+        return changePriority;
+    }
+
+    /**
+     * sets the priority added per sync tick for each unit an object moved
+     * since its last state was sent to the client
+     * @param changePriority
+     */
+    public void setChangePriority(float changePriority) {
+        this.changePriority = changePriority;
+    }
+
+    public boolean isDeltaCompression() {
+        return deltaCompression;
+    }
+
+    /**
+     * enables sending only the quantized changes of the physics objects instead
+     * of their full state on each sync (server only)
+     * @param deltaCompression
+     */
+    public void setDeltaCompression(boolean deltaCompression) {
+        this.deltaCompression = deltaCompression;
+    }
+
+    public float getDeltaEpsilon() {
+        return deltaEpsilon;
+    }
+
+    /**
+     * sets the minimum change of location, rotation or velocity that causes
+     * an object to be sent when delta compression is enabled
+     * @param deltaEpsilon
+     */
+    public void setDeltaEpsilon(float deltaEpsilon) {
+        this.deltaEpsilon = deltaEpsilon;
+    }
 }
@@ -43,21 +43,67 @@ import com.jme3.scene.Spatial;
 @Serializable()
 public class SyncCharacterMessage extends PhysicsSyncMessage {
 
+    /**
+     * size of the flat state used for delta compression: location (3),
+     * walk direction (3), view direction (3)
+     */
+    public static final int STATE_SIZE = 9;
     public Vector3f location = new Vector3f();
     public Vector3f walkDirection = new Vector3f();
     public Vector3f viewDirection = new Vector3f();
 
     public SyncCharacterMessage() {
+        setReliable(false);
     }
 
     public SyncCharacterMessage(long id, CharacterControl character) {
-//        setReliable(false);
+        setReliable(false);
         this.syncId = id;
         character.getPhysicsLocation(location);
         this.walkDirection.set(character.getWalkDirection());
         this.viewDirection.set(character.getViewDirection());
     }
 
+    /**
+     * creates a message from a flat state as written by writeState()
+     * @param id
+     * @param state
+     */
+    public SyncCharacterMessage(long id, float[] state) {
+        setReliable(false);
+        this.syncId = id;
+        readState(state);
+    }
+
+    /**
+     * sets the data of this message from a flat state as written by
+     * writeState()
+     * @param state
+     */
+    public void readState(float[] state) {
+        location.set(state[0], state[1], state[2]);
+        walkDirection.set(state[3], state[4], state[5]);
+        viewDirection.set(state[6], state[7], state[8]);
+    }
+
+    /**
+     * writes the data of this message to a flat float array of STATE_SIZE
+     * @param store
+     * @return
+     */
+    public float[] writeState(float[] store) {
+        store[0] = location.x;
+        store[1] = location.y;
+        store[2] = location.z;
+        store[3] = walkDirection.x;
+        store[4] = walkDirection.y;
+        store[5] = walkDirection.z;
+        store[6] = viewDirection.x;
+        store[7] = viewDirection.y;
+        store[8] = viewDirection.z;
+        return store;
+    }
+
     public void readData(CharacterControl character) {
         character.getPhysicsLocation(location);
         this.walkDirection.set(character.getWalkDirection());
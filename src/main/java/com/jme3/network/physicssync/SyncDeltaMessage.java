@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.serializing.Serializable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delta sync message, contains only the quantized changes of the flat state of
+ * a rigid body or character relative to a state the receiving client has
+ * acknowledged (its baseline). The PhysicsSyncManager on the client resolves it to a
+ * full SyncRigidBodyMessage or SyncCharacterMessage before it is executed.
+ * @author normenhansen
+ */
+@Serializable()
+public class SyncDeltaMessage extends PhysicsSyncMessage {
+
+    public static final byte TYPE_RIGID_BODY = 0;
+    public static final byte TYPE_CHARACTER = 1;
+    /**
+     * the step size the delta values are quantized to
+     */
+    public static final float QUANTUM = 1f / 1024f;
+    public byte type;
+    public int mask;
+    public short[] values;
+    /**
+     * sequence of the batch the baseline was sent in
+     */
+    public int baseSequence;
+
+    public SyncDeltaMessage() {
+        setReliable(false);
+    }
+
+    public SyncDeltaMessage(long id, byte type, int baseSequence) {
+        setReliable(false);
+        this.syncId = id;
+        this.baseSequence = baseSequence;
+        this.type = type;
+    }
+
+    /**
+     * quantizes the difference between baseline and state into this message
+     * and updates the baseline to the state the client will reconstruct from it
+     * @param baseline
+     * @param state
+     * @return false if a component changed too much to be sent as delta
+     */
+    public boolean encode(float[] baseline, float[] state) {
+        short[] deltas = new short[state.length];
+        int count = 0;
+        mask = 0;
+        for (int i = 0; i < state.length; i++) {
+            int delta = Math.round((state[i] - baseline[i]) / QUANTUM);
+            if (delta > Short.MAX_VALUE || delta < Short.MIN_VALUE) {
+                return false;
+            }
+            if (delta != 0) {
+                mask |= 1 << i;
+                deltas[count++] = (short) delta;
+            }
+        }
+        values = new short[count];
+        System.arraycopy(deltas, 0, values, 0, count);
+        decode(baseline);
+        return true;
+    }
+
+    /**
+     * applies the deltas in this message to the given baseline
+     * @param baseline
+     */
+    public void decode(float[] baseline) {
+        int index = 0;
+        for (int i = 0; i < baseline.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                baseline[i] += values[index++] * QUANTUM;
+            }
+        }
+    }
+
+    /**
+     * creates the full sync message for the given (decoded) state
+     * @param state
+     * @return
+     */
+    public PhysicsSyncMessage createFullMessage(float[] state) {
+        PhysicsSyncMessage message;
+        if (type == TYPE_RIGID_BODY) {
+            message = new SyncRigidBodyMessage(syncId, state);
+        } else {
+            message = new SyncCharacterMessage(syncId, state);
+        }
+        message.time = time;
+        return message;
+    }
+
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    @Override
+    public void applyData(Object object) {
+        Logger.getLogger(SyncDeltaMessage.class.getName()).log(Level.WARNING, "Delta message applied without baseline: {0}", syncId);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+/**
+ * Binary heap of sync messages ordered by time stamp, messages with the same
+ * time stamp are kept in the order they were added. Used as jitter buffer on
+ * the client, only the head has to be checked to find the due messages.
+ * @author normenhansen
+ */
+class SyncMessageBuffer {
+
+    private PhysicsSyncMessage[] messages = new PhysicsSyncMessage[64];
+    private long[] orders = new long[64];
+    private int size = 0;
+    private long nextOrder = 0;
+
+    void add(PhysicsSyncMessage message) {
+        if (size == messages.length) {
+            PhysicsSyncMessage[] newMessages = new PhysicsSyncMessage[size * 2];
+            long[] newOrders = new long[size * 2];
+            System.arraycopy(messages, 0, newMessages, 0, size);
+            System.arraycopy(orders, 0, newOrders, 0, size);
+            messages = newMessages;
+            orders = newOrders;
+        }
+        int index = size++;
+        long order = nextOrder++;
+        //sift up
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBefore(message.time, order, parent)) {
+                break;
+            }
+            messages[index] = messages[parent];
+            orders[index] = orders[parent];
+            index = parent;
+        }
+        messages[index] = message;
+        orders[index] = order;
+    }
+
+    /**
+     * gets the message with the lowest time stamp without removing it
+     * @return the message or null if the buffer is empty
+     */
+    PhysicsSyncMessage peek() {
+        return size == 0 ? null : messages[0];
+    }
+
+    /**
+     * removes and returns the message with the lowest time stamp
+     * @return the message or null if the buffer is empty
+     */
+    PhysicsSyncMessage poll() {
+        if (size == 0) {
+            return null;
+        }
+        PhysicsSyncMessage result = messages[0];
+        size--;
+        PhysicsSyncMessage message = messages[size];
+        long order = orders[size];
+        messages[size] = null;
+        if (size > 0) {
+            //sift down
+            int index = 0;
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                int right = child + 1;
+                if (right < size && isBefore(messages[right].time, orders[right], child)) {
+                    child = right;
+                }
+                if (isBefore(message.time, order, child)) {
+                    break;
+                }
+                messages[index] = messages[child];
+                orders[index] = orders[child];
+                index = child;
+            }
+            messages[index] = message;
+            orders[index] = order;
+        }
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            messages[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * checks if a message with the given time and order comes before the
+     * message at the given heap index
+     */
+    private boolean isBefore(double time, long order, int index) {
+        double otherTime = messages[index].time;
+        return time < otherTime || (time == otherTime && order < orders[index]);
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.SerializerRegistration;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact serializer for SyncRigidBodyMessage and SyncCharacterMessage.
+ * Locations are written as 16 bit fixed point values relative to the world
+ * bounds, rotations with the smallest three quaternion encoding in 32 bits and
+ * velocities and directions as 16 bit fixed point values within their range.
+ * The ranges are static so that the instance the client creates when it gets
+ * the serializer registrations uses the same values, set them on client and
+ * server before connecting.
+ * @author normenhansen
+ */
+public class SyncMessageSerializer extends Serializer {
+
+    private static final float SQRT_HALF = FastMath.sqrt(0.5f);
+    private static final int ROTATION_BITS = 10;
+    private static final int ROTATION_MAX = (1 << ROTATION_BITS) - 1;
+    private static final Vector3f worldMin = new Vector3f(-256, -64, -256);
+    private static final Vector3f worldMax = new Vector3f(256, 192, 256);
+    private static float maxLinearVelocity = 128;
+    private static float maxAngularVelocity = 64;
+    private static float maxWalkDirection = 4;
+
+    /**
+     * sets the bounds of the world, locations outside are clamped to them
+     * @param min
+     * @param max
+     */
+    public static void setWorldBounds(Vector3f min, Vector3f max) {
+        worldMin.set(min);
+        worldMax.set(max);
+    }
+
+    /**
+     * sets the maximum velocities that can be sent, larger values are clamped
+     * @param linear
+     * @param angular
+     */
+    public static void setMaxVelocity(float linear, float angular) {
+        maxLinearVelocity = linear;
+        maxAngularVelocity = angular;
+    }
+
+    /**
+     * sets the maximum length of each component of the character walk
+     * direction that can be sent
+     * @param maxWalkDirection
+     */
+    public static void setMaxWalkDirection(float maxWalkDirection) {
+        SyncMessageSerializer.maxWalkDirection = maxWalkDirection;
+    }
+
+    /**
+     * reduces the data of the message to the precision it has after being
+     * sent with this serializer, so that the server can keep the same state
+     * the client gets. Does nothing if the message class is not registered
+     * with this serializer.
+     * @param message
+     */
+    public static void quantize(PhysicsSyncMessage message) {
+        SerializerRegistration registration = Serializer.getExactSerializerRegistration(message.getClass());
+        if (registration == null || !(registration.getSerializer() instanceof SyncMessageSerializer)) {
+            return;
+        }
+        if (message instanceof SyncRigidBodyMessage) {
+            SyncRigidBodyMessage msg = (SyncRigidBodyMessage) message;
+            quantizeVector(msg.location, worldMin, worldMax);
+            msg.rotation = decodeRotation(encodeRotation(msg.rotation)).toRotationMatrix(msg.rotation);
+            quantizeVector(msg.linearVelocity, maxLinearVelocity);
+            quantizeVector(msg.angularVelocity, maxAngularVelocity);
+        } else if (message instanceof SyncCharacterMessage) {
+            SyncCharacterMessage msg = (SyncCharacterMessage) message;
+            quantizeVector(msg.location, worldMin, worldMax);
+            quantizeVector(msg.walkDirection, maxWalkDirection);
+            quantizeVector(msg.viewDirection, 1);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        PhysicsSyncMessage message;
+        if (c == SyncRigidBodyMessage.class) {
+            SyncRigidBodyMessage msg = new SyncRigidBodyMessage();
+            msg.syncId = data.getLong();
+            msg.time = data.getDouble();
+            msg.location = readVector(data, worldMin, worldMax, new Vector3f());
+            msg.rotation = decodeRotation(data.getInt()).toRotationMatrix(new Matrix3f());
+            msg.linearVelocity = readVector(data, maxLinearVelocity, new Vector3f());
+            msg.angularVelocity = readVector(data, maxAngularVelocity, new Vector3f());
+            message = msg;
+        } else if (c == SyncCharacterMessage.class) {
+            SyncCharacterMessage msg = new SyncCharacterMessage();
+            msg.syncId = data.getLong();
+            msg.time = data.getDouble();
+            readVector(data, worldMin, worldMax, msg.location);
+            readVector(data, maxWalkDirection, msg.walkDirection);
+            readVector(data, 1, msg.viewDirection);
+            message = msg;
+        } else {
+            throw new IOException("Unsupported class for SyncMessageSerializer: " + c);
+        }
+        return (T) message;
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        if (object instanceof SyncRigidBodyMessage) {
+            SyncRigidBodyMessage msg = (SyncRigidBodyMessage) object;
+            buffer.putLong(msg.syncId);
+            buffer.putDouble(msg.time);
+            writeVector(buffer, msg.location, worldMin, worldMax);
+            buffer.putInt(encodeRotation(msg.rotation));
+            writeVector(buffer, msg.linearVelocity, maxLinearVelocity);
+            writeVector(buffer, msg.angularVelocity, maxAngularVelocity);
+        } else if (object instanceof SyncCharacterMessage) {
+            SyncCharacterMessage msg = (SyncCharacterMessage) object;
+            buffer.putLong(msg.syncId);
+            buffer.putDouble(msg.time);
+            writeVector(buffer, msg.location, worldMin, worldMax);
+            writeVector(buffer, msg.walkDirection, maxWalkDirection);
+            writeVector(buffer, msg.viewDirection, 1);
+        } else {
+            throw new IOException("Unsupported object for SyncMessageSerializer: " + object);
+        }
+    }
+
+    /**
+     * encodes the rotation as the three smallest components of its quaternion
+     * with the index of the largest component in the upper two bits
+     */
+    private static int encodeRotation(Matrix3f rotation) {
+        Quaternion quat = new Quaternion().fromRotationMatrix(rotation).normalizeLocal();
+        float x = quat.getX();
+        float y = quat.getY();
+        float z = quat.getZ();
+        float w = quat.getW();
+        int largest = 0;
+        float largestValue = FastMath.abs(x);
+        if (FastMath.abs(y) > largestValue) {
+            largest = 1;
+            largestValue = FastMath.abs(y);
+        }
+        if (FastMath.abs(z) > largestValue) {
+            largest = 2;
+            largestValue = FastMath.abs(z);
+        }
+        if (FastMath.abs(w) > largestValue) {
+            largest = 3;
+        }
+        float a, b, c, l;
+        switch (largest) {
+            case 0:
+                l = x;
+                a = y;
+                b = z;
+                c = w;
+                break;
+            case 1:
+                l = y;
+                a = x;
+                b = z;
+                c = w;
+                break;
+            case 2:
+                l = z;
+                a = x;
+                b = y;
+                c = w;
+                break;
+            default:
+                l = w;
+                a = x;
+                b = y;
+                c = z;
+                break;
+        }
+        //q and -q are the same rotation, make the dropped component positive
+        if (l < 0) {
+            a = -a;
+            b = -b;
+            c = -c;
+        }
+        return largest << (ROTATION_BITS * 3)
+                | encodeRotationComponent(a) << (ROTATION_BITS * 2)
+                | encodeRotationComponent(b) << ROTATION_BITS
+                | encodeRotationComponent(c);
+    }
+
+    private static Quaternion decodeRotation(int bits) {
+        int largest = (bits >>> (ROTATION_BITS * 3)) & 3;
+        float a = decodeRotationComponent(bits >>> (ROTATION_BITS * 2));
+        float b = decodeRotationComponent(bits >>> ROTATION_BITS);
+        float c = decodeRotationComponent(bits);
+        float l = FastMath.sqrt(Math.max(0, 1 - a * a - b * b - c * c));
+        Quaternion quat = new Quaternion();
+        switch (largest) {
+            case 0:
+                quat.set(l, a, b, c);
+                break;
+            case 1:
+                quat.set(a, l, b, c);
+                break;
+            case 2:
+                quat.set(a, b, l, c);
+                break;
+            default:
+                quat.set(a, b, c, l);
+                break;
+        }
+        return quat.normalizeLocal();
+    }
+
+    private static int encodeRotationComponent(float value) {
+        float scaled = (FastMath.clamp(value / SQRT_HALF, -1, 1) + 1) * 0.5f;
+        return Math.round(scaled * ROTATION_MAX);
+    }
+
+    private static float decodeRotationComponent(int bits) {
+        return ((bits & ROTATION_MAX) / (float) ROTATION_MAX * 2 - 1) * SQRT_HALF;
+    }
+
+    private static short encode(float value, float min, float max) {
+        float scaled = (FastMath.clamp(value, min, max) - min) / (max - min);
+        return (short) (Math.round(scaled * 65535) - 32768);
+    }
+
+    private static float decode(short bits, float min, float max) {
+        return min + (bits + 32768) / 65535f * (max - min);
+    }
+
+    private static void writeVector(ByteBuffer buffer, Vector3f vector, Vector3f min, Vector3f max) {
+        buffer.putShort(encode(vector.x, min.x, max.x));
+        buffer.putShort(encode(vector.y, min.y, max.y));
+        buffer.putShort(encode(vector.z, min.z, max.z));
+    }
+
+    private static void writeVector(ByteBuffer buffer, Vector3f vector, float range) {
+        buffer.putShort(encode(vector.x, -range, range));
+        buffer.putShort(encode(vector.y, -range, range));
+        buffer.putShort(encode(vector.z, -range, range));
+    }
+
+    private static Vector3f readVector(ByteBuffer data, Vector3f min, Vector3f max, Vector3f store) {
+        return store.set(decode(data.getShort(), min.x, max.x),
+                decode(data.getShort(), min.y, max.y),
+                decode(data.getShort(), min.z, max.z));
+    }
+
+    private static Vector3f readVector(ByteBuffer data, float range, Vector3f store) {
+        return store.set(decode(data.getShort(), -range, range),
+                decode(data.getShort(), -range, range),
+                decode(data.getShort(), -range, range));
+    }
+
+    private static void quantizeVector(Vector3f vector, Vector3f min, Vector3f max) {
+        vector.set(decode(encode(vector.x, min.x, max.x), min.x, max.x),
+                decode(encode(vector.y, min.y, max.y), min.y, max.y),
+                decode(encode(vector.z, min.z, max.z), min.z, max.z));
+    }
+
+    private static void quantizeVector(Vector3f vector, float range) {
+        vector.set(decode(encode(vector.x, -range, range), -range, range),
+                decode(encode(vector.y, -range, range), -range, range),
+                decode(encode(vector.z, -range, range), -range, range));
+    }
+}
@@ -35,6 +35,7 @@ import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.bullet.control.VehicleControl;
 import com.jme3.bullet.objects.PhysicsRigidBody;
 import com.jme3.math.Matrix3f;
+import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
@@ -46,16 +47,22 @@ import com.jme3.scene.Spatial;
 @Serializable()
 public class SyncRigidBodyMessage extends PhysicsSyncMessage {
 
+    /**
+     * size of the flat state used for delta compression: location (3),
+     * rotation quaternion (4), linear velocity (3), angular velocity (3)
+     */
+    public static final int STATE_SIZE = 13;
     public Vector3f location;
     public Matrix3f rotation;
     public Vector3f linearVelocity;
     public Vector3f angularVelocity;
 
     public SyncRigidBodyMessage() {
+        setReliable(false);
     }
 
     public SyncRigidBodyMessage(long id, PhysicsRigidBody body) {
-//        setReliable(false);
+        setReliable(false);
         this.syncId = id;
         location = body.getPhysicsLocation(new Vector3f());
         rotation = body.getPhysicsRotationMatrix(new Matrix3f());
@@ -65,6 +72,60 @@ public class SyncRigidBodyMessage extends PhysicsSyncMessage {
         body.getAngularVelocity(angularVelocity);
     }
 
+    /**
+     * creates a message from a flat state as written by writeState()
+     * @param id
+     * @param state
+     */
+    public SyncRigidBodyMessage(long id, float[] state) {
+        setReliable(false);
+        this.syncId = id;
+        readState(state);
+    }
+
+    /**
+     * sets the data of this message from a flat state as written by
+     * writeState()
+     * @param state
+     */
+    public void readState(float[] state) {
+        if (location == null) {
+            location = new Vector3f();
+            rotation = new Matrix3f();
+            linearVelocity = new Vector3f();
+            angularVelocity = new Vector3f();
+        }
+        location.set(state[0], state[1], state[2]);
+        new Quaternion(state[3], state[4], state[5], state[6]).toRotationMatrix(rotation);
+        linearVelocity.set(state[7], state[8], state[9]);
+        angularVelocity.set(state[10], state[11], state[12]);
+    }
+
+    /**
+     * writes the data of this message to a flat float array of STATE_SIZE,
+     * the rotation is stored as quaternion with positive w
+     * @param store
+     * @return
+     */
+    public float[] writeState(float[] store) {
+        Quaternion quat = new Quaternion().fromRotationMatrix(rotation);
+        float sign = quat.getW() < 0 ? -1 : 1;
+        store[0] = location.x;
+        store[1] = location.y;
+        store[2] = location.z;
+        store[3] = quat.getX() * sign;
+        store[4] = quat.getY() * sign;
+        store[5] = quat.getZ() * sign;
+        store[6] = quat.getW() * sign;
+        store[7] = linearVelocity.x;
+        store[8] = linearVelocity.y;
+        store[9] = linearVelocity.z;
+        store[10] = angularVelocity.x;
+        store[11] = angularVelocity.y;
+        store[12] = angularVelocity.z;
+        return store;
+    }
+
     public void readData(PhysicsRigidBody body) {
         location = body.getPhysicsLocation(new Vector3f());
         rotation = body.getPhysicsRotationMatrix(new Matrix3f());
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+/**
+ * Stores the last snapshots (flat states) of a synced rigid body or character
+ * on the client and applies the state interpolated for the current render time
+ * each frame. When no newer snapshot has arrived yet the newest snapshot is
+ * applied once and the local physics extrapolates the object with the sent
+ * velocities (or walk direction) until the next snapshot arrives.
+ * @author normenhansen
+ */
+class SyncSnapshotBuffer {
+
+    static final int SIZE = 3;
+    private final double[] times = new double[SIZE];
+    private final float[][] states = new float[SIZE][];
+    private int count = 0;
+    private final PhysicsSyncMessage message;
+    private final float[] state;
+    private boolean extrapolating = false;
+
+    /**
+     * @param message message used to apply the interpolated states, a
+     * SyncRigidBodyMessage or SyncCharacterMessage
+     */
+    SyncSnapshotBuffer(PhysicsSyncMessage message) {
+        this.message = message;
+        if (message instanceof SyncRigidBodyMessage) {
+            state = new float[SyncRigidBodyMessage.STATE_SIZE];
+        } else {
+            state = new float[SyncCharacterMessage.STATE_SIZE];
+        }
+    }
+
+    /**
+     * adds a snapshot, keeps the snapshots ordered by time and drops the
+     * oldest one when the buffer is full
+     * @param time
+     * @param snapshot
+     */
+    void add(double time, float[] snapshot) {
+        int index = count;
+        if (count == SIZE) {
+            if (time <= times[0]) {
+                return;
+            }
+            System.arraycopy(times, 1, times, 0, SIZE - 1);
+            System.arraycopy(states, 1, states, 0, SIZE - 1);
+            index = SIZE - 1;
+        } else {
+            count++;
+        }
+        while (index > 0 && times[index - 1] > time) {
+            times[index] = times[index - 1];
+            states[index] = states[index - 1];
+            index--;
+        }
+        times[index] = time;
+        states[index] = snapshot;
+    }
+
+    /**
+     * applies the state for the given render time (server time) to the object
+     * @param object
+     * @param renderTime
+     */
+    void apply(Object object, double renderTime) {
+        if (count == 0) {
+            return;
+        }
+        if (renderTime >= times[count - 1]) {
+            //let the physics extrapolate after applying the newest snapshot
+            if (!extrapolating) {
+                extrapolating = true;
+                applyState(object, states[count - 1]);
+            }
+            return;
+        }
+        extrapolating = false;
+        if (renderTime <= times[0]) {
+            applyState(object, states[0]);
+            return;
+        }
+        int index = 0;
+        while (times[index + 1] < renderTime) {
+            index++;
+        }
+        double span = times[index + 1] - times[index];
+        float amount = span > 0 ? (float) ((renderTime - times[index]) / span) : 1;
+        interpolate(states[index], states[index + 1], amount, state);
+        applyState(object, state);
+    }
+
+    private void interpolate(float[] from, float[] to, float amount, float[] store) {
+        for (int i = 0; i < store.length; i++) {
+            store[i] = from[i] + (to[i] - from[i]) * amount;
+        }
+        if (message instanceof SyncRigidBodyMessage) {
+            //normalized lerp of the rotation quaternion along the shorter arc
+            float dot = from[3] * to[3] + from[4] * to[4] + from[5] * to[5] + from[6] * to[6];
+            float sign = dot < 0 ? -1 : 1;
+            float lengthSquared = 0;
+            for (int i = 3; i < 7; i++) {
+                store[i] = from[i] + (to[i] * sign - from[i]) * amount;
+                lengthSquared += store[i] * store[i];
+            }
+            float invLength = 1f / (float) Math.sqrt(lengthSquared);
+            for (int i = 3; i < 7; i++) {
+                store[i] *= invLength;
+            }
+        }
+    }
+
+    private void applyState(Object object, float[] snapshot) {
+        if (message instanceof SyncRigidBodyMessage) {
+            ((SyncRigidBodyMessage) message).readState(snapshot);
+        } else {
+            ((SyncCharacterMessage) message).readState(snapshot);
+        }
+        message.applyData(object);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+/**
+ * Ring buffer of the last flat states of one synced object by sequence number
+ * of the batch they were sent in. Used on the client to find the baseline a
+ * delta message refers to and on the server to keep the states sent to a
+ * client until it acknowledges them.
+ * @author normenhansen
+ */
+class SyncStateHistory {
+
+    static final int SIZE = 32;
+    private final int[] sequences = new int[SIZE];
+    private final float[][] states = new float[SIZE][];
+    /**
+     * sequence of the newest state put in the history
+     */
+    int lastSequence;
+    /**
+     * sequence of the newest state the client acknowledged (server only)
+     */
+    int ackedSequence;
+
+    SyncStateHistory(int sequence) {
+        lastSequence = sequence - 1;
+        ackedSequence = sequence - 1;
+    }
+
+    /**
+     * stores the state for the given sequence, does nothing if the slot already
+     * holds a newer state
+     * @param sequence
+     * @param state
+     */
+    void put(int sequence, float[] state) {
+        int slot = sequence & (SIZE - 1);
+        if (states[slot] != null && sequences[slot] - sequence > 0) {
+            return;
+        }
+        sequences[slot] = sequence;
+        states[slot] = state;
+        if (sequence - lastSequence > 0) {
+            lastSequence = sequence;
+        }
+    }
+
+    /**
+     * gets the state sent with the given sequence
+     * @param sequence
+     * @return the state or null if it is not in the history anymore
+     */
+    float[] get(int sequence) {
+        int slot = sequence & (SIZE - 1);
+        if (sequences[slot] != sequence) {
+            return null;
+        }
+        return states[slot];
+    }
+
+    /**
+     * checks if a state with the given sequence is newer than the newest
+     * state in the history
+     * @param sequence
+     * @return
+     */
+    boolean isNewer(int sequence) {
+        return sequence - lastSequence > 0;
+    }
+}
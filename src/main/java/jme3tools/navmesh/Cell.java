@@ -30,6 +30,11 @@ public class Cell implements Savable {
     static final int SIDE_AB = 0;
     static final int SIDE_BC = 1;
     static final int SIDE_CA = 2;
+    /**
+     * number of floats written by writeData(): vertices, plane normal and
+     * constant, center, side normals, wall midpoints and wall distances
+     */
+    static final int DATA_SIZE = 9 + 4 + 3 + 6 + 9 + 3;
 
     enum PathResult {
 
@@ -50,7 +55,11 @@ public class Cell implements Savable {
         
     };
 
-    class ClassifyResult {
+    /**
+     * The result of classifyPathToCell(), can be reused for many calls so
+     * moving on the mesh does not create garbage.
+     */
+    static class ClassifyResult {
 
         PathResult result = PathResult.NoRelationship;
         int side = 0;
@@ -86,34 +95,15 @@ public class Cell implements Savable {
 
     /**
      * pointers to cells that attach to this cell. A null link denotes a solid
-     * edge. Pathfinding Data...
+     * edge.
      */
     private Cell[] links = new Cell[3];
 
     /**
-     * an identifier for the current pathfinding session.
-     */
-    private volatile int sessionID;
-
-    /**
-     * total cost to use this cell as part of a path
-     */
-    private volatile float arrivalCost;
-
-    /**
-     * our estimated cost to the goal from here
-     */
-    private volatile float heuristic;
-
-    /**
-     * are we currently listed as an Open cell to revisit and test?
-     */
-    private volatile boolean open;
-
-    /**
-     * the side we arrived through.
+     * the index of this cell in the NavMesh, pathfinding data is stored per
+     * query by this index so multiple paths can be computed at the same time.
      */
-    private volatile int arrivalWall;
+    private int index;
 
     /**
      * the pre-computed midpoint of each wall.
@@ -187,6 +177,84 @@ public class Cell implements Savable {
 
     }
 
+    /**
+     * Stores the vertices and the data computed from them in the array so
+     * the cell can be restored with readData() without computing it again.
+     *
+     * @param data
+     * @param offset the index of the first of DATA_SIZE floats
+     */
+    void writeData(float[] data, int offset) {
+        int i = offset;
+        for (int v = 0; v < 3; v++) {
+            data[i++] = verticies[v].x;
+            data[i++] = verticies[v].y;
+            data[i++] = verticies[v].z;
+        }
+        Vector3f normal = cellPlane.getNormal();
+        data[i++] = normal.x;
+        data[i++] = normal.y;
+        data[i++] = normal.z;
+        data[i++] = cellPlane.getConstant();
+        data[i++] = center.x;
+        data[i++] = center.y;
+        data[i++] = center.z;
+        for (int side = 0; side < 3; side++) {
+            Vector2f sideNormal = sides[side].getNormal();
+            data[i++] = sideNormal.x;
+            data[i++] = sideNormal.y;
+        }
+        for (int side = 0; side < 3; side++) {
+            data[i++] = wallMidpoints[side].x;
+            data[i++] = wallMidpoints[side].y;
+            data[i++] = wallMidpoints[side].z;
+        }
+        for (int side = 0; side < 3; side++) {
+            data[i++] = wallDistances[side];
+        }
+    }
+
+    /**
+     * Restores the cell from the data stored by writeData(), links are not
+     * restored.
+     *
+     * @param data
+     * @param offset the index of the first of DATA_SIZE floats
+     */
+    void readData(float[] data, int offset) {
+        int i = offset;
+        for (int v = 0; v < 3; v++) {
+            verticies[v] = new Vector3f(data[i], data[i + 1], data[i + 2]);
+            i += 3;
+        }
+        links[SIDE_AB] = null;
+        links[SIDE_BC] = null;
+        links[SIDE_CA] = null;
+        cellPlane.setNormal(data[i], data[i + 1], data[i + 2]);
+        cellPlane.setConstant(data[i + 3]);
+        i += 4;
+        center.set(data[i], data[i + 1], data[i + 2]);
+        i += 3;
+
+        Vector2f point1 = new Vector2f(verticies[VERT_A].x, verticies[VERT_A].z);
+        Vector2f point2 = new Vector2f(verticies[VERT_B].x, verticies[VERT_B].z);
+        Vector2f point3 = new Vector2f(verticies[VERT_C].x, verticies[VERT_C].z);
+        sides[SIDE_AB] = new Line2D(point1, point2);
+        sides[SIDE_BC] = new Line2D(point2, point3);
+        sides[SIDE_CA] = new Line2D(point3, point1);
+        for (int side = 0; side < 3; side++) {
+            sides[side].setNormal(data[i], data[i + 1]);
+            i += 2;
+        }
+        for (int side = 0; side < 3; side++) {
+            wallMidpoints[side] = new Vector3f(data[i], data[i + 1], data[i + 2]);
+            i += 3;
+        }
+        for (int side = 0; side < 3; side++) {
+            wallDistances[side] = data[i++];
+        }
+    }
+
     /**
      * Navigation Mesh is created as a pool of raw cells. The cells are then
      * compared against each other to find common edges and create links.
@@ -237,7 +305,7 @@ public class Cell implements Savable {
      * @param Side
      * @param Caller
      */
-    private void setLink(int Side, Cell Caller) {
+    void setLink(int Side, Cell Caller) {
         links[Side] = Caller;
     }
 
@@ -249,6 +317,15 @@ public class Cell implements Savable {
         return cellPlane.solveForY(point.x, point.z);
     }
 
+    /**
+     * Calculates Y on the cell plane for the given X and Z
+     * @param x
+     * @param z
+     */
+    float getHeightOnCell(float x, float z) {
+        return cellPlane.solveForY(x, z);
+    }
+
     /**
      * Uses the X and Z information of the vector to calculate Y on the cell plane
      * @param point
@@ -265,23 +342,26 @@ public class Cell implements Savable {
      * @return
      */
     public boolean contains(Vector2f point) {
+        return contains(point.x, point.y);
+    }
+
+    /**
+     * Test to see if the 2D point x/z is within the cell without creating
+     * temporary objects.
+     *
+     * @param x
+     * @param z
+     * @return
+     */
+    boolean contains(float x, float z) {
         // we are "in" the cell if we are on the right hand side of all edge
         // lines of the cell
-        int InteriorCount = 0;
-
         for (int i = 0; i < 3; i++) {
-            Line2D.PointSide SideResult = sides[i].getSide(
-                    point, 1.0e-6f);
-
-            if (SideResult != Line2D.PointSide.Left) {
-                InteriorCount++;
+            if (sides[i].signedDistance(x, z) < -1.0e-6f) {
+                return false;
             }
         }
-        // if(InteriorCount == 3)
-        // System.out.println("Point "+TestPoint+" is in Cell:"+this);
-        // else
-        // System.out.println("Point "+TestPoint+" is NOT in Cell:"+this);
-        return (InteriorCount == 3);
+        return true;
     }
 
     /**
@@ -291,7 +371,46 @@ public class Cell implements Savable {
      * @return
      */
     public boolean contains(Vector3f point) {
-        return (contains(new Vector2f(point.x, point.z)));
+        return contains(point.x, point.z);
+    }
+
+    /**
+     * Computes the squared distance from the point to the closest point on
+     * this cell. The closest point is searched on the X/Z plane, its height is
+     * taken from the cell plane.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    float distanceSquared(float x, float y, float z) {
+        float closestX = x;
+        float closestZ = z;
+        if (!contains(x, z)) {
+            float closestDistance = Float.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                Vector2f a = sides[i].getPointA();
+                Vector2f b = sides[i].getPointB();
+                float dirX = b.x - a.x;
+                float dirZ = b.y - a.y;
+                float lengthSquared = dirX * dirX + dirZ * dirZ;
+                float t = lengthSquared > 0 ? ((x - a.x) * dirX + (z - a.y) * dirZ) / lengthSquared : 0;
+                t = t < 0 ? 0 : (t > 1 ? 1 : t);
+                float pointX = a.x + dirX * t;
+                float pointZ = a.y + dirZ * t;
+                float distance = (x - pointX) * (x - pointX) + (z - pointZ) * (z - pointZ);
+                if (distance < closestDistance) {
+                    closestDistance = distance;
+                    closestX = pointX;
+                    closestZ = pointZ;
+                }
+            }
+        }
+        float dx = x - closestX;
+        float dy = y - getHeightOnCell(closestX, closestZ);
+        float dz = z - closestZ;
+        return dx * dx + dy * dy + dz * dz;
     }
 
     public Vector3f getVertex(int Vert) {
@@ -306,24 +425,20 @@ public class Cell implements Savable {
         return (links[side]);
     }
 
-    Line2D getWall(int side){
-        return sides[side];
-    }
-
-    float getArrivalCost() {
-        return (arrivalCost);
+    Plane getPlane() {
+        return cellPlane;
     }
 
-    float getHeuristic() {
-        return (heuristic);
+    Line2D getWall(int side){
+        return sides[side];
     }
 
-    float getTotalCost() {
-        return (arrivalCost + heuristic);
+    int getIndex() {
+        return index;
     }
 
-    int getArrivalWall() {
-        return (arrivalWall);
+    void setIndex(int index) {
+        this.index = index;
     }
 
     public float getWallLength(int side){
@@ -348,12 +463,25 @@ public class Cell implements Savable {
      *
      * In either case PointOfIntersection will contain the point where the path
      * intersected with the wall of the cell if it is provided by the caller.
+     *
+     * The result is stored in the given ClassifyResult, which is returned.
+     */
+    ClassifyResult classifyPathToCell(Line2D MotionPath, ClassifyResult result) {
+        return classifyPathToCell(MotionPath.getPointA().x, MotionPath.getPointA().y,
+                MotionPath.getPointB().x, MotionPath.getPointB().y, result);
+    }
+
+    /**
+     * Same as classifyPathToCell(Line2D, ClassifyResult) for the path from
+     * startX, startY to endX, endY
      */
-    ClassifyResult classifyPathToCell(Line2D MotionPath) {
+    ClassifyResult classifyPathToCell(float startX, float startY, float endX, float endY, ClassifyResult result) {
         // System.out.println("Cell:"+m_Vertex[0].toString()+" "+m_Vertex[1].toString()+" "+m_Vertex[2].toString());
         // System.out.println("     Path:"+MotionPath);
         int interiorCount = 0;
-        ClassifyResult result = new ClassifyResult();
+        result.result = PathResult.NoRelationship;
+        result.side = 0;
+        result.cell = null;
 
         // Check our MotionPath against each of the three cell walls
         for (int i = 0; i < 3; ++i) {
@@ -367,16 +495,16 @@ public class Cell implements Savable {
 
             // If the destination endpoint of the MotionPath
             // is Not on the right side of this wall...
-            Line2D.PointSide end = sides[i].getSide(
-                    MotionPath.getPointB(), 0.0f);
+            Line2D.PointSide end = sides[i].getSide(endX, endY, 0.0f);
             if (end != Line2D.PointSide.Right) {
 //					&& end != Line2D.POINT_CLASSIFICATION.ON_LINE) {
                 // ..and the starting endpoint of the MotionPath
                 // is Not on the left side of this wall...
-                if (sides[i].getSide(MotionPath.getPointA(), 0.0f) != Line2D.PointSide.Left) {
+                if (sides[i].getSide(startX, startY, 0.0f) != Line2D.PointSide.Left) {
                     // Check to see if we intersect the wall
                     // using the Intersection function of Line2D
-                    Line2D.LineIntersect IntersectResult = MotionPath.intersect(sides[i], result.intersection);
+                    Line2D.LineIntersect IntersectResult = Line2D.intersect(startX, startY, endX, endY,
+                            sides[i], result.intersection);
 
                     if (IntersectResult == Line2D.LineIntersect.SegmentsIntersect || IntersectResult == Line2D.LineIntersect.ABisectsB) {
                         // record the link to the next adjacent cell
@@ -429,41 +557,46 @@ public class Cell implements Savable {
      * intersection with the path and cell wall number [SideNumber] and an
      * ending point (EndPointB) which resides outside of the cell.
      */
-    void projectPathOnCellWall(int sideNumber, Line2D motionPath) {
+    void projectPathOnCellWall(int sideNumber, Line2D motionPath, ClassifyResult scratch) {
         // compute the normalized vector of the cell wall in question
-        Vector2f WallNormal = sides[sideNumber].getPointB().subtract(
-                sides[sideNumber].getPointA());
-        WallNormal = WallNormal.normalize();
+        Vector2f wallA = sides[sideNumber].getPointA();
+        Vector2f wallB = sides[sideNumber].getPointB();
+        float wallX = wallB.x - wallA.x;
+        float wallY = wallB.y - wallA.y;
+        float wallLength = (float) Math.sqrt(wallX * wallX + wallY * wallY);
+        if (wallLength == 0.0f) {
+            wallLength = 1.0f;
+        }
+        wallX /= wallLength;
+        wallY /= wallLength;
 
         // determine the vector of our current movement
-        Vector2f MotionVector = motionPath.getPointB().subtract(
-                motionPath.getPointA());
+        Vector2f start = motionPath.getPointA();
+        Vector2f end = motionPath.getPointB();
+        float motionX = end.x - start.x;
+        float motionY = end.y - start.y;
 
         // compute dot product of our MotionVector and the normalized cell wall
         // this gives us the magnatude of our motion along the wall
 
-        float DotResult = MotionVector.dot(WallNormal);
+        float DotResult = motionX * wallX + motionY * wallY;
 
         // our projected vector is then the normalized wall vector times our new
-        // found magnatude
-        MotionVector = WallNormal.mult(DotResult);
-
-        // redirect our motion path along the new reflected direction
-        motionPath.setPointB(motionPath.getPointA().add(MotionVector));
+        // found magnatude, redirect our motion path along the new reflected
+        // direction
+        end.x = start.x + wallX * DotResult;
+        end.y = start.y + wallY * DotResult;
 
         //
         // Make sure starting point of motion path is within the cell
         //
-        Vector2f NewPoint = motionPath.getPointA();
-        forcePointToCellColumn(NewPoint);
-        motionPath.setPointA(NewPoint);
+        forcePointToCellColumn(start, scratch);
 
         //
         // Make sure destination point does not intersect this wall again
         //
-        NewPoint = motionPath.getPointB();
-        forcePointToWallInterior(sideNumber, NewPoint);
-        motionPath.setPointB(NewPoint);
+        forcePointToWallInterior(sideNumber, end);
+        motionPath.setPoints(start, end);
 
     }
 
@@ -475,7 +608,7 @@ public class Cell implements Savable {
      * @return
      */
     boolean forcePointToWallInterior(int sideNumber, Vector2f point) {
-        float Distance = sides[sideNumber].signedDistance(point);
+        float Distance = sides[sideNumber].signedDistance(point.x, point.y);
         float Epsilon = 0.001f;
 
         if (Distance <= Epsilon) {
@@ -488,9 +621,8 @@ public class Cell implements Savable {
 
             // this point needs adjustment
             Vector2f Normal = sides[sideNumber].getNormal();
-            Normal = Normal.mult(Distance);
-            point.x += Normal.x;
-            point.y += Normal.y;
+            point.x += Normal.x * Distance;
+            point.y += Normal.y * Distance;
             return (true);
         }
         return (false);
@@ -523,21 +655,28 @@ public class Cell implements Savable {
      * @return
      */
     boolean forcePointToCellColumn(Vector2f point) {
-        // create a motion path from the center of the cell to our point
-        Line2D TestPath = new Line2D(new Vector2f(center.x,
-                center.z), point);
+        return forcePointToCellColumn(point, new ClassifyResult());
+    }
 
-        ClassifyResult result = classifyPathToCell(TestPath);
+    /**
+     * Same as forcePointToCellColumn(Vector2f) using the given ClassifyResult
+     * for the test instead of creating one.
+     *
+     * @param point
+     * @param scratch
+     * @return
+     */
+    boolean forcePointToCellColumn(Vector2f point, ClassifyResult scratch) {
+        // test a motion path from the center of the cell to our point
+        ClassifyResult result = classifyPathToCell(center.x, center.z, point.x, point.y, scratch);
         // compare this path to the cell.
 
         if (result.result == PathResult.ExitingCell) {
-            Vector2f PathDirection = new Vector2f(result.intersection.x
-                    - center.x, result.intersection.y - center.z);
-
-            PathDirection = PathDirection.mult(0.9f);
+            float directionX = (result.intersection.x - center.x) * 0.9f;
+            float directionY = (result.intersection.y - center.z) * 0.9f;
 
-            point.x = center.x + PathDirection.x;
-            point.y = center.z + PathDirection.y;
+            point.x = center.x + directionX;
+            point.y = center.z + directionY;
             return true;
         } else if (result.result == PathResult.NoRelationship) {
             point.x = center.x;
@@ -565,117 +704,6 @@ public class Cell implements Savable {
         return (PointAltered);
     }
 
-    /**
-     * Process this cells neighbors using A*
-     *
-     * @param heap
-     * @return
-     */
-    boolean processCell(Heap heap) {
-        if (sessionID == heap.getSessionID()) {
-            // once we have been processed, we are closed
-            open = false;
-
-            // querry all our neigbors to see if they need to be added to the
-            // Open heap
-            for (int i = 0; i < 3; ++i) {
-                if (links[i] != null) {
-                    // abs(i-m_ArrivalWall) is a formula to determine which
-                    // distance measurement to use.
-                    // The Distance measurements between the wall midpoints of
-                    // this cell
-                    // are held in the order ABtoBC, BCtoCA and CAtoAB.
-                    // We add this distance to our known m_ArrivalCost to
-                    // compute
-                    // the total cost to reach the next adjacent cell.
-                    links[i].queryForPath(heap, this, arrivalCost
-                            + wallDistances[Math.abs(i - arrivalWall)]);
-                }
-            }
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Process this cell using the A* heuristic
-     *
-     * @param heap
-     * @param caller
-     * @param arrivalCost
-     * @return
-     */
-    boolean queryForPath(Heap heap, Cell caller, float arrivalCost) {
-        if (sessionID != heap.getSessionID()) {
-            // this is a new session, reset our internal data
-            sessionID = heap.getSessionID();
-
-            if (caller != null) {
-                open = true;
-                computeHeuristic(heap.getGoal());
-                this.arrivalCost = arrivalCost;
-
-                // remember the side this caller is entering from
-                if (caller.equals(links[0])) {
-                    arrivalWall = 0;
-                } else if (caller.equals(links[1])) {
-                    arrivalWall = 1;
-                } else if (caller.equals(links[2])) {
-                    arrivalWall = 2;
-                }
-            } else {
-                // we are the cell that contains the starting location
-                // of the A* search.
-                open = false;
-                this.arrivalCost = 0;
-                heuristic = 0;
-                arrivalWall = 0;
-            }
-            // add this cell to the Open heap
-            heap.addCell(this);
-            return true;
-        } else if (open) {
-            // m_Open means we are already in the Open Heap.
-            // If this new caller provides a better path, adjust our data
-            // Then tell the Heap to resort our position in the list.
-            if ((arrivalCost + heuristic) < (this.arrivalCost + heuristic)) {
-                this.arrivalCost = arrivalCost;
-
-                // remember the side this caller is entering from
-                if (caller.equals(links[0])) {
-                    arrivalWall = 0;
-                } else if (caller.equals(links[1])) {
-                    arrivalWall = 1;
-                } else if (caller.equals(links[2])) {
-                    arrivalWall = 2;
-                }
-                // ask the heap to resort our position in the priority heap
-                heap.adjustCell(this);
-                return true;
-            }
-        }
-        // this cell is closed
-        return false;
-    }
-
-
-    /**
-     * Compute the A* Heuristic for this cell given a Goal point
-     * @param goal
-     */
-    void computeHeuristic(Vector3f goal) {
-        // our heuristic is the estimated distance (using the longest axis
-        // delta) between our
-        // cell center and the goal location
-
-//        float XDelta = Math.abs(goal.x - center.x);
-//        float YDelta = Math.abs(goal.y - center.y);
-//        float ZDelta = Math.abs(goal.z - center.z);
-
-//        heuristic = Math.max(Math.max(XDelta, YDelta), ZDelta);
-        heuristic = goal.distance(center);
-    }
-
     @Override
     public String toString() {
         return "Cell: " + center.x + "," + center.z;
@@ -698,38 +726,30 @@ public class Cell implements Savable {
 
     public void write(JmeExporter e) throws IOException {
         OutputCapsule capsule = e.getCapsule(this);
-//        capsule.write(terrain, "terrain", null);
-//        capsule.write(cellPlane, "cellPlane", null);
-        capsule.write(verticies, "verticies", null);
-//        capsule.write(center, "center", null);
-//        capsule.write(sides, "sides", null);
+        float[] data = new float[DATA_SIZE];
+        writeData(data, 0);
+        capsule.write(data, "data", null);
         capsule.write(links, "links", null);
-//        capsule.write(wallMidpoints, "midpoints", null);
-//        capsule.write(wallDistances, "distances", null);
     }
 
     public void read(JmeImporter e) throws IOException {
         InputCapsule capsule = e.getCapsule(this);
-
-        Savable[] verts = capsule.readSavableArray("verticies", null);
-        for (int i = 0; i < verts.length; i++){
-            verticies[i] = (Vector3f) verts[i];
+        float[] data = capsule.readFloatArray("data", null);
+        if (data != null && data.length == DATA_SIZE) {
+            readData(data, 0);
+        } else {
+            // older files only contain the vertices
+            Savable[] verts = capsule.readSavableArray("verticies", null);
+            for (int i = 0; i < verts.length; i++){
+                verticies[i] = (Vector3f) verts[i];
+            }
+            computeCellData();
         }
 
         Savable[] savLinks = capsule.readSavableArray("links", null);
         for (int i = 0; i < savLinks.length; i++){
             links[i] = (Cell) savLinks[i];
         }
-
-        computeCellData();
-        
-//        cellPlane = (Plane) capsule.readSavable("cellPlane", new Plane());
-//        center = (Vector3f) capsule.readSavable("center", new Vector3f());
-//        sides = (Line2D[]) capsule.readSavableArray("sides", new Line2D[3]);
-//        wallMidpoints = (Vector3f[]) capsule.readSavableArray("midpoints", new Vector3f[3]);
-//        wallDistances = capsule.readFloatArray("distances", new float[3]);
-
-        
     }
 
     void checkAndLink(Cell other, float epsilon) {
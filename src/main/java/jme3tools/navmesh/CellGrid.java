@@ -0,0 +1,181 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * A uniform 2D grid over the X/Z bounding boxes of the cells of a NavMesh.
+ * Each bucket lists all cells whose bounding box overlaps it, the buckets are
+ * stored in one flat array of cell indices so that closest cell queries do
+ * not create any objects, the cells are tested on the PackedCells of the
+ * mesh. The grid is immutable once built, queries can run on any thread.
+ *
+ * @author normenhansen
+ */
+class CellGrid {
+
+    /**
+     * limits the grid size for very large or degenerate meshes
+     */
+    private static final int MAX_BUCKETS_PER_AXIS = 1024;
+    private final float minX;
+    private final float minZ;
+    private final float maxX;
+    private final float maxZ;
+    private final float bucketSize;
+    private final int width;
+    private final int depth;
+    /**
+     * start index of each bucket in cells, bucket i spans
+     * offsets[i] to offsets[i + 1]
+     */
+    private final int[] offsets;
+    private final int[] cells;
+    private final PackedCells packedCells;
+
+    CellGrid(PackedCells packedCells) {
+        this.packedCells = packedCells;
+        int count = packedCells.getCellCount();
+        float lowX = Float.MAX_VALUE, lowZ = Float.MAX_VALUE;
+        float highX = -Float.MAX_VALUE, highZ = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Cell cell = packedCells.getCell(i);
+            for (int j = 0; j < 3; j++) {
+                Vector3f vertex = cell.getVertex(j);
+                lowX = Math.min(lowX, vertex.x);
+                lowZ = Math.min(lowZ, vertex.z);
+                highX = Math.max(highX, vertex.x);
+                highZ = Math.max(highZ, vertex.z);
+            }
+        }
+        if (count == 0) {
+            lowX = lowZ = highX = highZ = 0;
+        }
+        minX = lowX;
+        minZ = lowZ;
+        maxX = highX;
+        maxZ = highZ;
+        float extentX = highX - lowX;
+        float extentZ = highZ - lowZ;
+        //about four cells per bucket for evenly sized cells
+        float size = (float) Math.sqrt(extentX * extentZ / Math.max(count, 1)) * 2.0f;
+        size = Math.max(size, Math.max(extentX, extentZ) / MAX_BUCKETS_PER_AXIS);
+        bucketSize = Math.max(size, 0.001f);
+        width = Math.min((int) (extentX / bucketSize) + 1, MAX_BUCKETS_PER_AXIS);
+        depth = Math.min((int) (extentZ / bucketSize) + 1, MAX_BUCKETS_PER_AXIS);
+
+        //count cells per bucket, then fill the buckets
+        offsets = new int[width * depth + 1];
+        for (int i = 0; i < count; i++) {
+            Cell cell = packedCells.getCell(i);
+            for (int z = getBucketZ(minZ(cell)); z <= getBucketZ(maxZ(cell)); z++) {
+                for (int x = getBucketX(minX(cell)); x <= getBucketX(maxX(cell)); x++) {
+                    offsets[z * width + x + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < width * depth; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        cells = new int[offsets[width * depth]];
+        int[] fill = new int[width * depth];
+        System.arraycopy(offsets, 0, fill, 0, fill.length);
+        for (int i = 0; i < count; i++) {
+            Cell cell = packedCells.getCell(i);
+            for (int z = getBucketZ(minZ(cell)); z <= getBucketZ(maxZ(cell)); z++) {
+                for (int x = getBucketX(minX(cell)); x <= getBucketX(maxX(cell)); x++) {
+                    cells[fill[z * width + x]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the cell that contains the point on the X/Z plane and is closest
+     * to it in height. If no cell contains the point the cell with the
+     * closest point on its surface is returned, searching the buckets in
+     * growing rings around the point until no closer cell can exist.
+     *
+     * @return the closest cell or null if the grid is empty
+     */
+    Cell findClosestCell(float x, float y, float z) {
+        if (cells.length == 0) {
+            return null;
+        }
+        int bucketX = getBucketX(x);
+        int bucketZ = getBucketZ(z);
+        if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) {
+            int closestCell = -1;
+            float closestHeight = Float.MAX_VALUE;
+            int bucket = bucketZ * width + bucketX;
+            for (int i = offsets[bucket]; i < offsets[bucket + 1]; i++) {
+                int cell = cells[i];
+                if (packedCells.contains(cell, x, z)) {
+                    float height = Math.abs(packedCells.getHeightOnCell(cell, x, z) - y);
+                    if (height < closestHeight) {
+                        closestHeight = height;
+                        closestCell = cell;
+                    }
+                }
+            }
+            if (closestCell >= 0) {
+                return packedCells.getCell(closestCell);
+            }
+        }
+        int closestCell = -1;
+        float closestDistance = Float.MAX_VALUE;
+        int maxRing = Math.max(width, depth);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            int lowX = bucketX - ring, highX = bucketX + ring;
+            int lowZ = bucketZ - ring, highZ = bucketZ + ring;
+            for (int bz = Math.max(lowZ, 0); bz <= Math.min(highZ, depth - 1); bz++) {
+                //only the border of the ring, inner buckets were checked before
+                int step = (bz == lowZ || bz == highZ) ? 1 : Math.max(highX - lowX, 1);
+                for (int bx = lowX; bx <= highX; bx += step) {
+                    if (bx < 0 || bx >= width) {
+                        continue;
+                    }
+                    int bucket = bz * width + bx;
+                    for (int i = offsets[bucket]; i < offsets[bucket + 1]; i++) {
+                        float distance = packedCells.distanceSquared(cells[i], x, y, z);
+                        if (distance < closestDistance) {
+                            closestDistance = distance;
+                            closestCell = cells[i];
+                        }
+                    }
+                }
+            }
+            //buckets outside this ring are at least ring * bucketSize away
+            float reach = ring * bucketSize;
+            if (closestCell >= 0 && closestDistance <= reach * reach) {
+                break;
+            }
+        }
+        return packedCells.getCell(closestCell);
+    }
+
+    private int getBucketX(float x) {
+        int bucket = (int) ((x - minX) / bucketSize);
+        return bucket < 0 || x < minX ? 0 : (bucket >= width ? width - 1 : bucket);
+    }
+
+    private int getBucketZ(float z) {
+        int bucket = (int) ((z - minZ) / bucketSize);
+        return bucket < 0 || z < minZ ? 0 : (bucket >= depth ? depth - 1 : bucket);
+    }
+
+    private static float minX(Cell cell) {
+        return Math.min(cell.getVertex(0).x, Math.min(cell.getVertex(1).x, cell.getVertex(2).x));
+    }
+
+    private static float maxX(Cell cell) {
+        return Math.max(cell.getVertex(0).x, Math.max(cell.getVertex(1).x, cell.getVertex(2).x));
+    }
+
+    private static float minZ(Cell cell) {
+        return Math.min(cell.getVertex(0).z, Math.min(cell.getVertex(1).z, cell.getVertex(2).z));
+    }
+
+    private static float maxZ(Cell cell) {
+        return Math.max(cell.getVertex(0).z, Math.max(cell.getVertex(1).z, cell.getVertex(2).z));
+    }
+}
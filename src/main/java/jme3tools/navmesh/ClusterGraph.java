@@ -0,0 +1,598 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Abstract graph for hierarchical path finding (HPA*) over the cells of a
+ * NavMesh. The mesh is divided into square clusters on the X/Z plane, each run
+ * of connected cells along the border between two clusters forms an entrance.
+ * The entrance cells on both sides are the nodes of the graph, they are
+ * connected across the border and to all other nodes of their cluster with the
+ * precomputed distance inside the cluster.
+ *
+ * A long path is first found on this small graph, the resulting entrance
+ * cells can then be used as intermediate goals for the normal A* search.
+ * The graph is built from the PackedCells of the mesh, cells blocked by
+ * obstacles are not passable. The graph is immutable once built, queries can
+ * run on any thread. When cells are blocked or unblocked a new graph is
+ * created from the old one, only the clusters around the changed cells are
+ * searched again.
+ *
+ * @author normenhansen
+ */
+class ClusterGraph {
+
+    private final PackedCells cells;
+    private final float clusterSize;
+    /**
+     * cluster of each cell and index of the cell within its cluster
+     */
+    private final int[] cellClusters;
+    private final int[] localIndices;
+    /**
+     * cells of each cluster, by local index
+     */
+    private final int[][] clusterCells;
+    /**
+     * the data of each cluster that is kept for updates: the entrances of
+     * the cluster as pairs of the entrance cell and the linked cell in the
+     * neighbour cluster, the cells of the nodes of the cluster sorted by
+     * index and the distances between these nodes in the cluster, row by row
+     */
+    private final int[][] clusterEntrances;
+    private final int[][] clusterNodeCells;
+    private final float[][] nodeDistances;
+    /**
+     * nodes of each cluster
+     */
+    private int[][] clusterNodes;
+    /**
+     * node data, edges are stored in flat arrays, the edges of node i span
+     * edgeStarts[i] to edgeStarts[i + 1]
+     */
+    private int[] nodeCells;
+    private int[] edgeStarts;
+    private int[] edgeTargets;
+    private float[] edgeCosts;
+
+    ClusterGraph(PackedCells cells, float clusterSize) {
+        this.cells = cells;
+        this.clusterSize = clusterSize;
+        int count = cells.getCellCount();
+        float minX = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Vector3f center = cells.getCell(i).getCenter();
+            minX = Math.min(minX, center.x);
+            minZ = Math.min(minZ, center.z);
+            maxX = Math.max(maxX, center.x);
+            maxZ = Math.max(maxZ, center.z);
+        }
+        int columns = count == 0 ? 1 : (int) ((maxX - minX) / clusterSize) + 1;
+        int rows = count == 0 ? 1 : (int) ((maxZ - minZ) / clusterSize) + 1;
+        int clusterCount = columns * rows;
+
+        //assign cells to clusters
+        cellClusters = new int[count];
+        localIndices = new int[count];
+        int[] clusterSizes = new int[clusterCount];
+        for (int i = 0; i < count; i++) {
+            Vector3f center = cells.getCell(i).getCenter();
+            int column = Math.min((int) ((center.x - minX) / clusterSize), columns - 1);
+            int row = Math.min((int) ((center.z - minZ) / clusterSize), rows - 1);
+            int cluster = row * columns + column;
+            cellClusters[i] = cluster;
+            localIndices[i] = clusterSizes[cluster]++;
+        }
+        clusterCells = new int[clusterCount][];
+        for (int i = 0; i < clusterCount; i++) {
+            clusterCells[i] = new int[clusterSizes[i]];
+        }
+        for (int i = 0; i < count; i++) {
+            clusterCells[cellClusters[i]][localIndices[i]] = i;
+        }
+
+        clusterEntrances = new int[clusterCount][];
+        clusterNodeCells = new int[clusterCount][];
+        nodeDistances = new float[clusterCount][];
+        boolean[] dirty = new boolean[clusterCount];
+        Arrays.fill(dirty, true);
+        update(dirty);
+    }
+
+    /**
+     * Creates the graph for new blocked flags of the cells of the given
+     * graph. Only the clusters of the cells whose flag changed and of the
+     * cells linked to them are searched again, the other clusters keep their
+     * entrances and distances.
+     *
+     * @param graph the graph of the same mesh with the old flags
+     * @param cells the cells with the new flags
+     */
+    ClusterGraph(ClusterGraph graph, PackedCells cells) {
+        this.cells = cells;
+        clusterSize = graph.clusterSize;
+        cellClusters = graph.cellClusters;
+        localIndices = graph.localIndices;
+        clusterCells = graph.clusterCells;
+        clusterEntrances = graph.clusterEntrances.clone();
+        clusterNodeCells = graph.clusterNodeCells.clone();
+        nodeDistances = graph.nodeDistances.clone();
+        boolean[] dirty = new boolean[clusterCells.length];
+        for (int i = 0; i < cellClusters.length; i++) {
+            if (cells.isBlocked(i) != graph.cells.isBlocked(i)) {
+                //the entrances between the cell and its neighbours change
+                //on both sides of the border
+                dirty[cellClusters[i]] = true;
+                for (int side = 0; side < 3; side++) {
+                    int link = cells.getLink(i, side);
+                    if (link >= 0) {
+                        dirty[cellClusters[link]] = true;
+                    }
+                }
+            }
+        }
+        update(dirty);
+    }
+
+    /**
+     * finds the entrances of the dirty clusters again, then the nodes of the
+     * clusters their old and new entrances lead to and the distances of the
+     * clusters with changed nodes, and builds the edges of the graph
+     */
+    private void update(boolean[] dirty) {
+        int clusterCount = clusterCells.length;
+        boolean[] nodesChanged = dirty.clone();
+        for (int i = 0; i < clusterCount; i++) {
+            if (dirty[i]) {
+                markEntranceClusters(clusterEntrances[i], nodesChanged);
+                clusterEntrances[i] = findEntrances(i);
+                markEntranceClusters(clusterEntrances[i], nodesChanged);
+            }
+        }
+        //the nodes of a cluster are its entrance cells and the cells its
+        //neighbours enter it with
+        List<List<Integer>> nodeLists = new ArrayList<List<Integer>>(clusterCount);
+        for (int i = 0; i < clusterCount; i++) {
+            nodeLists.add(nodesChanged[i] ? new ArrayList<Integer>() : null);
+        }
+        for (int i = 0; i < clusterCount; i++) {
+            int[] entrances = clusterEntrances[i];
+            for (int j = 0; j < entrances.length; j += 2) {
+                if (nodesChanged[i]) {
+                    nodeLists.get(i).add(entrances[j]);
+                }
+                int other = cellClusters[entrances[j + 1]];
+                if (nodesChanged[other]) {
+                    nodeLists.get(other).add(entrances[j + 1]);
+                }
+            }
+        }
+        for (int i = 0; i < clusterCount; i++) {
+            if (!nodesChanged[i]) {
+                continue;
+            }
+            int[] nodes = toSortedSet(nodeLists.get(i));
+            if (dirty[i] || !Arrays.equals(nodes, clusterNodeCells[i])) {
+                clusterNodeCells[i] = nodes;
+                nodeDistances[i] = getNodeDistances(nodes);
+            }
+        }
+        buildEdges();
+    }
+
+    private void markEntranceClusters(int[] entrances, boolean[] clusters) {
+        if (entrances == null) {
+            return;
+        }
+        for (int i = 1; i < entrances.length; i += 2) {
+            clusters[cellClusters[entrances[i]]] = true;
+        }
+    }
+
+    /**
+     * finds the entrances of the cluster, runs of connected cells in the
+     * cluster that border the same neighbour cluster
+     * @return pairs of the entrance cell and the linked cell in the
+     * neighbour cluster
+     */
+    private int[] findEntrances(int cluster) {
+        List<Integer> entrances = new ArrayList<Integer>();
+        HashSet<Long> visited = new HashSet<Long>();
+        List<Integer> run = new ArrayList<Integer>();
+        int[] clusterCellList = clusterCells[cluster];
+        for (int c = 0; c < clusterCellList.length; c++) {
+            int i = clusterCellList[c];
+            if (cells.isBlocked(i)) {
+                continue;
+            }
+            for (int side = 0; side < 3; side++) {
+                int link = cells.getPassableLink(i, side);
+                if (link < 0 || cellClusters[link] == cluster) {
+                    continue;
+                }
+                int neighbour = cellClusters[link];
+                if (!visited.add(getBorderKey(i, neighbour))) {
+                    continue;
+                }
+                run.clear();
+                run.add(i);
+                for (int r = 0; r < run.size(); r++) {
+                    int runCell = run.get(r);
+                    for (int s = 0; s < 3; s++) {
+                        int next = cells.getPassableLink(runCell, s);
+                        if (next >= 0 && cellClusters[next] == cluster
+                                && bordersCluster(next, neighbour)
+                                && visited.add(getBorderKey(next, neighbour))) {
+                            run.add(next);
+                        }
+                    }
+                }
+                //the cell closest to the middle of the run is the entrance
+                int entrance = getMiddleCell(run);
+                for (int s = 0; s < 3; s++) {
+                    int other = cells.getPassableLink(entrance, s);
+                    if (other >= 0 && cellClusters[other] == neighbour) {
+                        entrances.add(entrance);
+                        entrances.add(other);
+                        break;
+                    }
+                }
+            }
+        }
+        int[] result = new int[entrances.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = entrances.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the distances between the nodes in their cluster, row by row
+     */
+    private float[] getNodeDistances(int[] nodes) {
+        float[] distances = new float[nodes.length * nodes.length];
+        if (nodes.length < 2) {
+            return distances;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            float[] cellDistances = getClusterDistances(nodes[i]);
+            for (int j = 0; j < nodes.length; j++) {
+                distances[i * nodes.length + j] = cellDistances[localIndices[nodes[j]]];
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * numbers the nodes cluster by cluster and builds the edges across the
+     * entrances and between the nodes of each cluster
+     */
+    private void buildEdges() {
+        int clusterCount = clusterCells.length;
+        int[] clusterStarts = new int[clusterCount + 1];
+        for (int i = 0; i < clusterCount; i++) {
+            clusterStarts[i + 1] = clusterStarts[i] + clusterNodeCells[i].length;
+        }
+        int nodeCount = clusterStarts[clusterCount];
+        nodeCells = new int[nodeCount];
+        clusterNodes = new int[clusterCount][];
+        for (int i = 0; i < clusterCount; i++) {
+            clusterNodes[i] = new int[clusterNodeCells[i].length];
+            for (int j = 0; j < clusterNodes[i].length; j++) {
+                clusterNodes[i][j] = clusterStarts[i] + j;
+                nodeCells[clusterStarts[i] + j] = clusterNodeCells[i][j];
+            }
+        }
+
+        //count the edges of each node, then fill them in
+        edgeStarts = new int[nodeCount + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] fill = pass == 0 ? null : edgeStarts.clone();
+            for (int i = 0; i < clusterCount; i++) {
+                int[] entrances = clusterEntrances[i];
+                for (int j = 0; j < entrances.length; j += 2) {
+                    int entranceNode = getNode(entrances[j], clusterStarts);
+                    int otherNode = getNode(entrances[j + 1], clusterStarts);
+                    float cost = cells.getCell(entrances[j]).getCenter().distance(cells.getCell(entrances[j + 1]).getCenter());
+                    addEdge(entranceNode, otherNode, cost, fill);
+                    addEdge(otherNode, entranceNode, cost, fill);
+                }
+                int[] nodes = clusterNodes[i];
+                float[] distances = nodeDistances[i];
+                if (nodes.length < 2) {
+                    continue;
+                }
+                for (int a = 0; a < nodes.length; a++) {
+                    for (int b = 0; b < nodes.length; b++) {
+                        float distance = distances[a * nodes.length + b];
+                        if (a != b && distance < Float.MAX_VALUE) {
+                            addEdge(nodes[a], nodes[b], distance, fill);
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int i = 0; i < nodeCount; i++) {
+                    edgeStarts[i + 1] += edgeStarts[i];
+                }
+                edgeTargets = new int[edgeStarts[nodeCount]];
+                edgeCosts = new float[edgeTargets.length];
+            }
+        }
+    }
+
+    /**
+     * counts the edge when fill is null, otherwise stores it at the next
+     * free position of the node
+     */
+    private void addEdge(int node, int target, float cost, int[] fill) {
+        if (fill == null) {
+            edgeStarts[node + 1]++;
+        } else {
+            edgeTargets[fill[node]] = target;
+            edgeCosts[fill[node]] = cost;
+            fill[node]++;
+        }
+    }
+
+    /**
+     * @return the node of the cell, found in the sorted node cells of its
+     * cluster
+     */
+    private int getNode(int cell, int[] clusterStarts) {
+        int cluster = cellClusters[cell];
+        return clusterStarts[cluster] + Arrays.binarySearch(clusterNodeCells[cluster], cell);
+    }
+
+    float getClusterSize() {
+        return clusterSize;
+    }
+
+    int getNodeCount() {
+        return nodeCells.length;
+    }
+
+    int getClusterCount() {
+        return clusterCells.length;
+    }
+
+    /**
+     * Finds a route from the start cell to the goal cell on the cluster graph.
+     * The route contains the entrance cell of each cluster the path enters,
+     * excluding the goal cell itself.
+     *
+     * @param route the list to add the entrance cells to
+     * @return false if the goal cannot be reached from the start
+     */
+    boolean findRoute(Cell startCell, Cell goalCell, List<Cell> route) {
+        int startCluster = cellClusters[startCell.getIndex()];
+        int goalCluster = cellClusters[goalCell.getIndex()];
+        if (startCluster == goalCluster) {
+            return true;
+        }
+        float[] startDistances = getClusterDistances(startCell.getIndex());
+        float[] goalDistances = getClusterDistances(goalCell.getIndex());
+        Vector3f goal = goalCell.getCenter();
+
+        int nodeCount = nodeCells.length;
+        float[] costs = new float[nodeCount];
+        int[] parents = new int[nodeCount];
+        boolean[] closed = new boolean[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            costs[i] = Float.MAX_VALUE;
+            parents[i] = -1;
+        }
+        Queue queue = new Queue();
+        int[] startNodes = clusterNodes[startCluster];
+        for (int i = 0; i < startNodes.length; i++) {
+            int node = startNodes[i];
+            float distance = startDistances[localIndices[nodeCells[node]]];
+            if (distance < Float.MAX_VALUE) {
+                costs[node] = distance;
+                queue.add(node, distance + getNodeCenter(node).distance(goal));
+            }
+        }
+        int bestNode = -1;
+        float bestCost = Float.MAX_VALUE;
+        while (queue.size() > 0) {
+            float estimate = queue.peekKey();
+            int node = queue.poll();
+            if (estimate >= bestCost) {
+                break;
+            }
+            if (closed[node]) {
+                continue;
+            }
+            closed[node] = true;
+            if (cellClusters[nodeCells[node]] == goalCluster) {
+                float distance = goalDistances[localIndices[nodeCells[node]]];
+                if (distance < Float.MAX_VALUE && costs[node] + distance < bestCost) {
+                    bestCost = costs[node] + distance;
+                    bestNode = node;
+                }
+            }
+            for (int e = edgeStarts[node]; e < edgeStarts[node + 1]; e++) {
+                int target = edgeTargets[e];
+                float cost = costs[node] + edgeCosts[e];
+                if (!closed[target] && cost < costs[target]) {
+                    costs[target] = cost;
+                    parents[target] = node;
+                    queue.add(target, cost + getNodeCenter(target).distance(goal));
+                }
+            }
+        }
+        if (bestNode < 0) {
+            return false;
+        }
+        //collect the cells where the route enters a new cluster
+        int first = route.size();
+        for (int node = bestNode; parents[node] >= 0; node = parents[node]) {
+            if (cellClusters[nodeCells[node]] != cellClusters[nodeCells[parents[node]]]) {
+                route.add(first, cells.getCell(nodeCells[node]));
+            }
+        }
+        return true;
+    }
+
+    private Vector3f getNodeCenter(int node) {
+        return cells.getCell(nodeCells[node]).getCenter();
+    }
+
+    /**
+     * Dijkstra search from the cell over the cells of its cluster
+     * @return the distance to each cell of the cluster by local index,
+     * Float.MAX_VALUE for unreachable cells
+     */
+    private float[] getClusterDistances(int source) {
+        int cluster = cellClusters[source];
+        float[] distances = new float[clusterCells[cluster].length];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = Float.MAX_VALUE;
+        }
+        distances[localIndices[source]] = 0;
+        Queue queue = new Queue();
+        queue.add(source, 0);
+        while (queue.size() > 0) {
+            float distance = queue.peekKey();
+            int index = queue.poll();
+            if (distance > distances[localIndices[index]]) {
+                continue;
+            }
+            Cell cell = cells.getCell(index);
+            for (int side = 0; side < 3; side++) {
+                int link = cells.getPassableLink(index, side);
+                if (link < 0 || cellClusters[link] != cluster) {
+                    continue;
+                }
+                float linkDistance = distance + cell.getCenter().distance(cells.getCell(link).getCenter());
+                if (linkDistance < distances[localIndices[link]]) {
+                    distances[localIndices[link]] = linkDistance;
+                    queue.add(link, linkDistance);
+                }
+            }
+        }
+        return distances;
+    }
+
+    private boolean bordersCluster(int cell, int cluster) {
+        for (int side = 0; side < 3; side++) {
+            int link = cells.getPassableLink(cell, side);
+            if (link >= 0 && cellClusters[link] == cluster) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getMiddleCell(List<Integer> run) {
+        float x = 0, z = 0;
+        for (int i = 0; i < run.size(); i++) {
+            Vector3f center = cells.getCell(run.get(i)).getCenter();
+            x += center.x;
+            z += center.z;
+        }
+        x /= run.size();
+        z /= run.size();
+        int middle = run.get(0);
+        float closest = Float.MAX_VALUE;
+        for (int i = 0; i < run.size(); i++) {
+            Vector3f center = cells.getCell(run.get(i)).getCenter();
+            float distance = (center.x - x) * (center.x - x) + (center.z - z) * (center.z - z);
+            if (distance < closest) {
+                closest = distance;
+                middle = run.get(i);
+            }
+        }
+        return middle;
+    }
+
+    private static int[] toSortedSet(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        Arrays.sort(result);
+        int count = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (count == 0 || result[count - 1] != result[i]) {
+                result[count++] = result[i];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private static long getBorderKey(int cell, int cluster) {
+        return ((long) cell << 32) | (cluster & 0xFFFFFFFFL);
+    }
+
+    /**
+     * minimal binary heap of int values with float keys, entries are not
+     * updated but added again so outdated entries have to be skipped
+     */
+    private static class Queue {
+
+        private int[] values = new int[32];
+        private float[] keys = new float[32];
+        private int size = 0;
+
+        void add(int value, float key) {
+            if (size == values.length) {
+                int[] newValues = new int[size * 2];
+                float[] newKeys = new float[size * 2];
+                System.arraycopy(values, 0, newValues, 0, size);
+                System.arraycopy(keys, 0, newKeys, 0, size);
+                values = newValues;
+                keys = newKeys;
+            }
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                values[index] = values[parent];
+                keys[index] = keys[parent];
+                index = parent;
+            }
+            values[index] = value;
+            keys[index] = key;
+        }
+
+        float peekKey() {
+            return keys[0];
+        }
+
+        int poll() {
+            int result = values[0];
+            size--;
+            int value = values[size];
+            float key = keys[size];
+            int index = 0;
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                values[index] = values[child];
+                keys[index] = keys[child];
+                index = child;
+            }
+            values[index] = value;
+            keys[index] = key;
+            return result;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
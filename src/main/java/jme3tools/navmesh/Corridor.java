@@ -0,0 +1,47 @@
+package jme3tools.navmesh;
+
+/**
+ * A Corridor is the sequence of cells from a start cell to a goal cell found
+ * by the A* search, together with the wall each cell is left through. It does
+ * not depend on the exact start and goal positions so it is immutable and can
+ * be shared between all paths between the same cells.
+ *
+ * @author normenhansen
+ */
+public class Corridor {
+
+    private final Cell[] cells;
+    private final int[] exitWalls;
+
+    Corridor(Cell[] cells, int[] exitWalls) {
+        this.cells = cells;
+        this.exitWalls = exitWalls;
+    }
+
+    /**
+     * @return the number of cells including start and goal cell
+     */
+    public int size() {
+        return cells.length;
+    }
+
+    public Cell getCell(int index) {
+        return cells[index];
+    }
+
+    public Cell getStartCell() {
+        return cells[0];
+    }
+
+    public Cell getGoalCell() {
+        return cells[cells.length - 1];
+    }
+
+    /**
+     * @return the wall through which the cell at the index is left, the goal
+     * cell has no exit wall
+     */
+    int getExitWall(int index) {
+        return exitWalls[index];
+    }
+}
@@ -0,0 +1,135 @@
+package jme3tools.navmesh;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of the corridors found by A*, keyed by start cell, goal cell and
+ * entity radius class. Units that are sent to the same destination from
+ * nearby positions reuse the corridor instead of searching again. The cache
+ * has to be cleared whenever the cells of the NavMesh change.
+ *
+ * @author normenhansen
+ */
+public class CorridorCache {
+
+    /**
+     * entity radii are grouped in steps of this size
+     */
+    private static final float RADIUS_STEP = 0.5f;
+    private final LinkedHashMap<Long, Corridor> corridors;
+    private int maxSize;
+    private int generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public CorridorCache(int maxSize) {
+        this.maxSize = maxSize;
+        corridors = new LinkedHashMap<Long, Corridor>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Corridor> eldest) {
+                if (size() > CorridorCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * gets the cached corridor and counts a hit or miss
+     * @return the corridor or null if none is cached
+     */
+    public synchronized Corridor get(Cell startCell, Cell goalCell, float entityRadius) {
+        Corridor corridor = corridors.get(getKey(startCell, goalCell, entityRadius));
+        if (corridor != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return corridor;
+    }
+
+    /**
+     * adds a corridor, ignored if the cache was cleared since the given
+     * generation so corridors of an old mesh are not stored
+     */
+    public synchronized void put(Corridor corridor, float entityRadius, int generation) {
+        if (maxSize <= 0 || generation != this.generation) {
+            return;
+        }
+        corridors.put(getKey(corridor.getStartCell(), corridor.getGoalCell(), entityRadius), corridor);
+    }
+
+    /**
+     * @return the current generation, increased each time the cache is cleared
+     */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * removes all corridors, has to be called when the mesh changes
+     */
+    public synchronized void clear() {
+        corridors.clear();
+        generation++;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        while (corridors.size() > maxSize) {
+            corridors.remove(corridors.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int size() {
+        return corridors.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the ratio of lookups that found a corridor, 0 if there were no
+     * lookups yet
+     */
+    public synchronized float getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (float) hits / lookups;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    private static Long getKey(Cell startCell, Cell goalCell, float entityRadius) {
+        long radiusClass = Math.min((int) Math.ceil(entityRadius / RADIUS_STEP), 255);
+        return (radiusClass << 56) | ((long) startCell.getIndex() << 28) | goalCell.getIndex();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CorridorCache[size=" + corridors.size() + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + ", hit rate=" + Math.round(getHitRate() * 100) + "%]";
+    }
+}
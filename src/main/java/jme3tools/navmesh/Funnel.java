@@ -0,0 +1,191 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+
+/**
+ * String pulling through the portals of a corridor using the simple stupid
+ * funnel algorithm. The funnel from the current apex is narrowed portal by
+ * portal, when one side crosses the other the crossed corner becomes a
+ * waypoint and the new apex. This gives the shortest path through the
+ * corridor in one pass. The portal buffers are reused between calls, a Funnel
+ * must only be used by one thread at a time.
+ *
+ * @author normenhansen
+ */
+class Funnel {
+
+    private static final float EPSILON = 1.0e-6f;
+    private float[] leftX = new float[64];
+    private float[] leftZ = new float[64];
+    private float[] rightX = new float[64];
+    private float[] rightZ = new float[64];
+
+    /**
+     * Fills the path with the waypoints from start to end through the
+     * corridor. The portals are narrowed by the entity radius on both sides.
+     */
+    void buildPath(NavMesh mesh, Path path, Corridor corridor, Vector3f startPos, Vector3f endPos, float entityRadius) {
+        path.initialize(mesh, startPos, corridor.getStartCell(), endPos, corridor.getGoalCell());
+        int count = setupPortals(corridor, startPos, endPos, entityRadius);
+
+        float apexX = startPos.x, apexZ = startPos.z;
+        float portalLeftX = apexX, portalLeftZ = apexZ;
+        float portalRightX = apexX, portalRightZ = apexZ;
+        int apexIndex = 0, leftIndex = 0, rightIndex = 0;
+
+        for (int i = 1; i < count; i++) {
+            float lx = leftX[i], lz = leftZ[i];
+            float rx = rightX[i], rz = rightZ[i];
+
+            // a portal through the apex does not narrow the funnel, with the
+            // apex on it the sides would be collinear and look crossed
+            if (equal(apexX, apexZ, portalLeftX, portalLeftZ)
+                    && equal(apexX, apexZ, portalRightX, portalRightZ)
+                    && isInsidePortal(apexX, apexZ, lx, lz, rx, rz)) {
+                continue;
+            }
+
+            // update right vertex
+            if (triArea(apexX, apexZ, portalRightX, portalRightZ, rx, rz) <= 0.0f) {
+                if (equal(apexX, apexZ, portalRightX, portalRightZ)
+                        || triArea(apexX, apexZ, portalLeftX, portalLeftZ, rx, rz) > 0.0f) {
+                    // tighten the funnel
+                    portalRightX = rx;
+                    portalRightZ = rz;
+                    rightIndex = i;
+                } else {
+                    if (leftIndex == count - 1) {
+                        // the end point is reached, finishPath() adds it
+                        break;
+                    }
+                    // right over left, left is a corner of the path
+                    addCorner(path, corridor, leftIndex, portalLeftX, portalLeftZ);
+                    apexX = portalLeftX;
+                    apexZ = portalLeftZ;
+                    apexIndex = leftIndex;
+                    portalRightX = portalLeftX = apexX;
+                    portalRightZ = portalLeftZ = apexZ;
+                    leftIndex = rightIndex = apexIndex;
+                    // restart the scan from the new apex
+                    i = apexIndex;
+                    continue;
+                }
+            }
+
+            // update left vertex
+            if (triArea(apexX, apexZ, portalLeftX, portalLeftZ, lx, lz) >= 0.0f) {
+                if (equal(apexX, apexZ, portalLeftX, portalLeftZ)
+                        || triArea(apexX, apexZ, portalRightX, portalRightZ, lx, lz) < 0.0f) {
+                    // tighten the funnel
+                    portalLeftX = lx;
+                    portalLeftZ = lz;
+                    leftIndex = i;
+                } else {
+                    if (rightIndex == count - 1) {
+                        // the end point is reached, finishPath() adds it
+                        break;
+                    }
+                    // left over right, right is a corner of the path
+                    addCorner(path, corridor, rightIndex, portalRightX, portalRightZ);
+                    apexX = portalRightX;
+                    apexZ = portalRightZ;
+                    apexIndex = rightIndex;
+                    portalRightX = portalLeftX = apexX;
+                    portalRightZ = portalLeftZ = apexZ;
+                    leftIndex = rightIndex = apexIndex;
+                    // restart the scan from the new apex
+                    i = apexIndex;
+                    continue;
+                }
+            }
+        }
+        path.finishPath();
+    }
+
+    /**
+     * Stores the portals of the corridor, portal 0 is the start point, the
+     * last portal is the end point.
+     * @return the number of portals
+     */
+    private int setupPortals(Corridor corridor, Vector3f startPos, Vector3f endPos, float entityRadius) {
+        int count = corridor.size() + 1;
+        if (leftX.length < count) {
+            int size = Math.max(count, leftX.length * 2);
+            leftX = new float[size];
+            leftZ = new float[size];
+            rightX = new float[size];
+            rightZ = new float[size];
+        }
+        leftX[0] = rightX[0] = startPos.x;
+        leftZ[0] = rightZ[0] = startPos.z;
+        for (int i = 0; i < corridor.size() - 1; i++) {
+            Cell cell = corridor.getCell(i);
+            int wall = corridor.getExitWall(i);
+            Line2D line = cell.getWall(wall);
+            Vector2f a = line.getPointA();
+            Vector2f b = line.getPointB();
+            // the cell is on the right side of its walls, so seen from inside
+            // the cell point B of the exit wall is on the left
+            float ax = a.x, az = a.y, bx = b.x, bz = b.y;
+            float length = line.length();
+            if (length > 2 * entityRadius) {
+                float blend = entityRadius / length;
+                float dx = (ax - bx) * blend, dz = (az - bz) * blend;
+                ax -= dx;
+                az -= dz;
+                bx += dx;
+                bz += dz;
+            } else {
+                ax = bx = (ax + bx) * 0.5f;
+                az = bz = (az + bz) * 0.5f;
+            }
+            leftX[i + 1] = ax;
+            leftZ[i + 1] = az;
+            rightX[i + 1] = bx;
+            rightZ[i + 1] = bz;
+        }
+        leftX[count - 1] = rightX[count - 1] = endPos.x;
+        leftZ[count - 1] = rightZ[count - 1] = endPos.z;
+        return count;
+    }
+
+    /**
+     * adds the corner of the portal as waypoint, the portal is on the exit
+     * wall of the corridor cell before it
+     */
+    private void addCorner(Path path, Corridor corridor, int portal, float x, float z) {
+        Cell cell = corridor.getCell(Math.max(portal - 1, 0));
+        path.addWaypoint(x, cell.getHeightOnCell(x, z), z, cell);
+    }
+
+    private static float triArea(float ax, float az, float bx, float bz, float cx, float cz) {
+        return (cx - ax) * (bz - az) - (bx - ax) * (cz - az);
+    }
+
+    /**
+     * checks if the point is on the portal from left to right but not at
+     * one of its ends
+     */
+    private static boolean isInsidePortal(float x, float z, float lx, float lz, float rx, float rz) {
+        if (equal(x, z, lx, lz) || equal(x, z, rx, rz)) {
+            return false;
+        }
+        float dx = rx - lx, dz = rz - lz;
+        float lengthSquared = dx * dx + dz * dz;
+        if (lengthSquared < EPSILON) {
+            return false;
+        }
+        float t = ((x - lx) * dx + (z - lz) * dz) / lengthSquared;
+        if (t <= 0 || t >= 1) {
+            return false;
+        }
+        float px = lx + dx * t - x, pz = lz + dz * t - z;
+        return px * px + pz * pz < EPSILON;
+    }
+
+    private static boolean equal(float ax, float az, float bx, float bz) {
+        float dx = bx - ax, dz = bz - az;
+        return dx * dx + dz * dz < EPSILON;
+    }
+}
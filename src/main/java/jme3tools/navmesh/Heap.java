@@ -1,6 +1,5 @@
 package jme3tools.navmesh;
 
-import jme3tools.navmesh.util.MinHeap;
 import com.jme3.math.Vector3f;
 
 /**
@@ -10,6 +9,12 @@ import com.jme3.math.Vector3f;
  * Patel for detailing the use of STL heaps in this way. It's much faster than a
  * linked list or multimap approach.
  * 
+ * The heap is an indexed binary heap over plain arrays. All A* data of a
+ * query (costs, arrival walls, open state and heap slot of each cell) is kept
+ * here by cell index instead of on the cells, so each thread can search the
+ * same mesh with its own Heap. The cells are handled by index and their
+ * links, centers and wall lengths are read from the PackedCells of the mesh.
+ * 
  * Portions Copyright (C) Greg Snook, 2000
  * 
  * @author TR
@@ -17,9 +22,25 @@ import com.jme3.math.Vector3f;
  */
 class Heap {
 
-    private MinHeap nodes = new MinHeap();
+    private int[] cells = new int[64];
+    private float[] costs = new float[64];
+    private int size = 0;
     private int sessionID;
     private Vector3f goal;
+    private PackedCells packedCells;
+    /**
+     * the cell the search looks for, it can be entered even if it is blocked
+     */
+    private int target;
+    /**
+     * per cell data, indexed by Cell.getIndex()
+     */
+    private int[] sessionIDs = new int[0];
+    private float[] arrivalCosts = new float[0];
+    private float[] heuristics = new float[0];
+    private int[] arrivalWalls = new int[0];
+    private boolean[] open = new boolean[0];
+    private int[] heapIndices = new int[0];
 
     int getSessionID() {
         return sessionID;
@@ -29,30 +50,153 @@ class Heap {
         return goal;
     }
 
-    void initialize(int sessionID, Vector3f goal) {
+    /**
+     * Starts a new path finding session, the cell data of previous sessions
+     * is invalidated by the new session ID instead of clearing it.
+     */
+    void initialize(Vector3f goal, PackedCells packedCells, int target) {
         this.goal = goal;
-        this.sessionID = sessionID;
-        nodes.clear();
+        this.packedCells = packedCells;
+        this.target = target;
+        size = 0;
+        int cellCount = packedCells.getCellCount();
+        if (sessionIDs.length != cellCount) {
+            sessionIDs = new int[cellCount];
+            arrivalCosts = new float[cellCount];
+            heuristics = new float[cellCount];
+            arrivalWalls = new int[cellCount];
+            open = new boolean[cellCount];
+            heapIndices = new int[cellCount];
+            sessionID = 0;
+        }
+        sessionID++;
+    }
+
+    float getArrivalCost(int cell) {
+        return arrivalCosts[cell];
+    }
+
+    float getTotalCost(int cell) {
+        return arrivalCosts[cell] + heuristics[cell];
     }
 
-    void addCell(Cell pCell) {
-        Node newNode = new Node(pCell, pCell.getTotalCost());
-        nodes.add(newNode);
+    int getArrivalWall(int cell) {
+        return arrivalWalls[cell];
     }
 
     /**
-     * Adjust a cell in the heap to reflect it's updated cost value. NOTE: Cells
-     * may only sort up in the heap.
+     * Process the neighbors of the cell using A*
+     *
+     * @param cell
+     * @return
      */
-    void adjustCell(Cell pCell) {
-        Node n = findNodeIterator(pCell);
+    boolean processCell(int cell) {
+        if (sessionIDs[cell] == sessionID) {
+            // once we have been processed, we are closed
+            open[cell] = false;
+
+            // querry all our neigbors to see if they need to be added to the
+            // Open heap
+            for (int i = 0; i < 3; ++i) {
+                int link = packedCells.getLink(cell, i);
+                // blocked cells are not entered unless they are the target
+                if (link >= 0 && (link == target || !packedCells.isBlocked(link))) {
+                    // abs(i-m_ArrivalWall) is a formula to determine which
+                    // distance measurement to use.
+                    // The Distance measurements between the wall midpoints of
+                    // this cell
+                    // are held in the order ABtoBC, BCtoCA and CAtoAB.
+                    // We add this distance to our known m_ArrivalCost to
+                    // compute
+                    // the total cost to reach the next adjacent cell.
+                    queryForPath(link, cell, arrivalCosts[cell]
+                            + packedCells.getWallLength(cell, Math.abs(i - arrivalWalls[cell])));
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Process the cell using the A* heuristic
+     *
+     * @param cell
+     * @param caller the cell the search comes from or -1 for the first cell
+     * @param arrivalCost
+     * @return
+     */
+    boolean queryForPath(int cell, int caller, float arrivalCost) {
+        if (sessionIDs[cell] != sessionID) {
+            // this is a new session, reset the data of the cell
+            sessionIDs[cell] = sessionID;
+            heapIndices[cell] = -1;
+
+            if (caller >= 0) {
+                open[cell] = true;
+                // our heuristic is the estimated distance between the cell
+                // center and the goal location
+                heuristics[cell] = packedCells.getCenterDistance(cell, goal);
+                arrivalCosts[cell] = arrivalCost;
+                // remember the side this caller is entering from
+                setArrivalWall(cell, caller);
+            } else {
+                // this is the cell that contains the starting location
+                // of the A* search.
+                open[cell] = false;
+                arrivalCosts[cell] = 0;
+                heuristics[cell] = 0;
+                arrivalWalls[cell] = 0;
+            }
+            // add this cell to the Open heap
+            addCell(cell);
+            return true;
+        } else if (open[cell]) {
+            // open means we are already in the Open Heap.
+            // If this new caller provides a better path, adjust our data
+            // Then tell the Heap to resort our position in the list.
+            if ((arrivalCost + heuristics[cell]) < (arrivalCosts[cell] + heuristics[cell])) {
+                arrivalCosts[cell] = arrivalCost;
+                // remember the side this caller is entering from
+                setArrivalWall(cell, caller);
+                // resort our position in the priority heap
+                adjustCell(cell);
+                return true;
+            }
+        }
+        // this cell is closed
+        return false;
+    }
 
-        if (n != nodes.lastElement()) {
-            // update the node data
-            n.cell = pCell;
-            n.cost = pCell.getTotalCost();
+    private void setArrivalWall(int cell, int caller) {
+        for (int i = 0; i < 3; i++) {
+            if (caller == packedCells.getLink(cell, i)) {
+                arrivalWalls[cell] = i;
+                return;
+            }
+        }
+    }
 
-            nodes.sort();
+    void addCell(int cell) {
+        if (size == cells.length) {
+            int[] newCells = new int[size * 2];
+            float[] newCosts = new float[size * 2];
+            System.arraycopy(cells, 0, newCells, 0, size);
+            System.arraycopy(costs, 0, newCosts, 0, size);
+            cells = newCells;
+            costs = newCosts;
+        }
+        siftUp(cell, getTotalCost(cell), size++);
+    }
+
+    /**
+     * Adjust a cell in the heap to reflect it's updated cost value. NOTE: Cells
+     * may only sort up in the heap.
+     */
+    void adjustCell(int cell) {
+        int index = heapIndices[cell];
+        if (index >= 0 && index < size && cells[index] == cell) {
+            siftUp(cell, getTotalCost(cell), index);
         }
     }
 
@@ -60,27 +204,59 @@ class Heap {
      * @return true if the heap is not empty
      */
     boolean isNotEmpty() {
-        return !nodes.isEmpty();
+        return size > 0;
     }
 
     /**
      * Pop the top off the heap and remove the best value for processing.
+     * @return the index of the cell or -1 if the heap is empty
      */
-    Node getTop() {
-        return (Node) nodes.deleteMin();
+    int getTop() {
+        if (size == 0) {
+            return -1;
+        }
+        int top = cells[0];
+        heapIndices[top] = -1;
+        size--;
+        int last = cells[size];
+        float cost = costs[size];
+        if (size > 0) {
+            siftDown(last, cost, 0);
+        }
+        return top;
     }
 
-    /**
-     * Search the container for a given cell. May be slow, so don't do this
-     * unless nessesary.
-     */
-    Node findNodeIterator(Cell pCell) {
-        for (Object n : nodes) {
+    private void siftUp(int cell, float cost, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (costs[parent] <= cost) {
+                break;
+            }
+            place(cells[parent], costs[parent], index);
+            index = parent;
+        }
+        place(cell, cost, index);
+    }
 
-            if (((Node) n).cell.equals(pCell)) {
-                return ((Node) n);
+    private void siftDown(int cell, float cost, int index) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && costs[child + 1] < costs[child]) {
+                child++;
+            }
+            if (cost <= costs[child]) {
+                break;
             }
+            place(cells[child], costs[child], index);
+            index = child;
         }
-        return (Node) nodes.lastElement();
+        place(cell, cost, index);
+    }
+
+    private void place(int cell, float cost, int index) {
+        cells[index] = cell;
+        costs[index] = cost;
+        heapIndices[cell] = index;
     }
 }
@@ -109,6 +109,13 @@ class Line2D implements Savable {
         return normal;
     }
 
+    /**
+     * sets a normal that was computed before, e.g. when loading a NavMesh
+     */
+    void setNormal(float x, float y) {
+        normal = new Vector2f(x, y);
+    }
+
     public void setPoints(float PointAx, float PointAy, float PointBx, float PointBy) {
         pointA.x = PointAx;
         pointA.y = PointAy;
@@ -163,6 +170,17 @@ class Line2D implements Savable {
         return point.subtract(pointA).dot(normal); //.x*m_Normal.x + TestVector.y*m_Normal.y;//DotProduct(TestVector,m_Normal);
     }
 
+    /**
+     * Same as signedDistance(Vector2f) without creating a temporary vector
+     */
+    public float signedDistance(float x, float y) {
+        if (normal == null) {
+            computeNormal();
+        }
+
+        return (x - pointA.x) * normal.x + (y - pointA.y) * normal.y;
+    }
+
     /**
      * Determines where a point lies in relation to this line. Consider the line as
      * if you were standing on PointA of the line looking towards PointB. The incomming
@@ -181,6 +199,22 @@ class Line2D implements Savable {
         return result;
     }
 
+    /**
+     * Same as getSide(Vector2f, float) without creating a temporary vector
+     */
+    public PointSide getSide(float x, float y, float epsilon) {
+        PointSide result = PointSide.OnLine;
+        float distance = signedDistance(x, y);
+
+        if (distance > epsilon) {
+            result = PointSide.Right;
+        } else if (distance < -epsilon) {
+            result = PointSide.Left;
+        }
+
+        return result;
+    }
+
     /**
      * this line A = x0, y0 and B = x1, y1
      * other is A = x2, y2 and B = x3, y3
@@ -189,12 +223,20 @@ class Line2D implements Savable {
      * @return
      */
     public LineIntersect intersect(Line2D other, Vector2f intersectionPoint) {
-        float denom = (other.pointB.y - other.pointA.y) * (this.pointB.x - this.pointA.x)
-                - (other.pointB.x - other.pointA.x) * (this.pointB.y - this.pointA.y);
-        float u0 = (other.pointB.x - other.pointA.x) * (this.pointA.y - other.pointA.y)
-                - (other.pointB.y - other.pointA.y) * (this.pointA.x - other.pointA.x);
-        float u1 = (other.pointA.x - this.pointA.x) * (this.pointB.y - this.pointA.y)
-                - (other.pointA.y - this.pointA.y) * (this.pointB.x - this.pointA.x);
+        return intersect(pointA.x, pointA.y, pointB.x, pointB.y, other, intersectionPoint);
+    }
+
+    /**
+     * Same as intersect(Line2D, Vector2f) for the line from x0, y0 to x1, y1,
+     * used by the cell tests so they do not need a Line2D for their paths
+     */
+    static LineIntersect intersect(float x0, float y0, float x1, float y1, Line2D other, Vector2f intersectionPoint) {
+        float denom = (other.pointB.y - other.pointA.y) * (x1 - x0)
+                - (other.pointB.x - other.pointA.x) * (y1 - y0);
+        float u0 = (other.pointB.x - other.pointA.x) * (y0 - other.pointA.y)
+                - (other.pointB.y - other.pointA.y) * (x0 - other.pointA.x);
+        float u1 = (other.pointA.x - x0) * (y1 - y0)
+                - (other.pointA.y - y0) * (x1 - x0);
 
         //if parallel
         if (denom == 0.0f) {
@@ -209,8 +251,8 @@ class Line2D implements Savable {
             u0 = u0 / denom;
             u1 = u1 / denom;
 
-            float x = this.pointA.x + u0 * (this.pointB.x - this.pointA.x);
-            float y = this.pointA.y + u0 * (this.pointB.y - this.pointA.y);
+            float x = x0 + u0 * (x1 - x0);
+            float y = y0 + u0 * (y1 - y0);
 
             if (intersectionPoint != null) {
                 intersectionPoint.x = x; //(m_PointA.x + (FactorAB * Bx_minus_Ax));
@@ -1,12 +1,13 @@
 package jme3tools.navmesh;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import jme3tools.navmesh.Cell.ClassifyResult;
 import jme3tools.navmesh.Cell.PathResult;
-import jme3tools.navmesh.Line2D.LineIntersect;
-import jme3tools.navmesh.Path.Waypoint;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
@@ -18,8 +19,13 @@ import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A NavigationMesh is a collection of NavigationCells used to control object
@@ -33,19 +39,56 @@ import java.util.List;
  */
 public class NavMesh implements Savable {
 
+    /**
+     * header of the binary navmesh files, "NAVM"
+     */
+    private static final int BINARY_MAGIC = 0x4E41564D;
+    private static final int BINARY_VERSION = 2;
+    private static final int BINARY_HEADER_SIZE = 12;
+
     /**
      * the cells that make up this mesh
      */
     private ArrayList<Cell> cellList = new ArrayList<Cell>();
 
     /**
-     * path finding data...
+     * the cell data used by the queries packed into arrays, rebuilt when the
+     * mesh is loaded
+     */
+    private volatile PackedCells packedCells;
+
+    /**
+     * spatial index over the cells, rebuilt when the mesh is loaded
+     */
+    private volatile CellGrid cellGrid;
+
+    /**
+     * increased whenever the cells or their links change, obstacle updates
+     * computed for an older version are dropped
+     */
+    private volatile int meshVersion = 0;
+
+    /**
+     * cluster graph for hierarchical path finding
      */
-    private volatile int sessionID = 0;
-    private volatile Heap heap = new Heap();
+    private volatile ClusterGraph clusterGraph;
+    private float clusterSize = 32;
+
+    /**
+     * path finding data, each query takes a Heap from the pool so paths can
+     * be computed on multiple threads at the same time
+     */
+    private final ConcurrentLinkedQueue<Heap> heaps = new ConcurrentLinkedQueue<Heap>();
+    private final ConcurrentLinkedQueue<Funnel> funnels = new ConcurrentLinkedQueue<Funnel>();
+
+    /**
+     * corridors found by previous searches
+     */
+    private final CorridorCache corridorCache = new CorridorCache(256);
 
     public void clear() {
         cellList.clear();
+        cellsChanged();
     }
 
     /**
@@ -59,7 +102,9 @@ public class NavMesh implements Savable {
     public void addCell(Vector3f pointA, Vector3f PointB, Vector3f PointC) {
         Cell newCell = new Cell();
         newCell.initialize(pointA.clone(), PointB.clone(), PointC.clone());
+        newCell.setIndex(cellList.size());
         cellList.add(newCell);
+        cellsChanged();
     }
 
     /**
@@ -99,76 +144,124 @@ public class NavMesh implements Savable {
      * Find the closest cell on the mesh to the given point
      */
     public Cell findClosestCell(Vector3f point) {
-        float closestDistance = 3.4E+38f;
-        float closestHeight = 3.4E+38f;
-        boolean foundHomeCell = false;
-        float thisDistance;
-        Cell closestCell = null;
-
-        for (Cell cell : cellList) {
-            if (cell.contains(point)) {
-                thisDistance = Math.abs(cell.getHeightOnCell(point) - point.y);
-
-                if (foundHomeCell) {
-                    if (thisDistance < closestHeight) {
-                        closestCell = cell;
-                        closestHeight = thisDistance;
-                    }
-                } else {
-                    closestCell = cell;
-                    closestHeight = thisDistance;
-                    foundHomeCell = true;
-                }
-            }
-
-            if (!foundHomeCell) {
-                Vector2f start = new Vector2f(cell.getCenter().x, cell.getCenter().z);
-                Vector2f end = new Vector2f(point.x, point.z);
-                Line2D motionPath = new Line2D(start, end);
-
-                ClassifyResult Result = cell.classifyPathToCell(motionPath);
+        CellGrid grid = cellGrid;
+        if (grid == null) {
+            grid = new CellGrid(getPackedCells());
+            cellGrid = grid;
+        }
+        return grid.findClosestCell(point.x, point.y, point.z);
+    }
 
-                if (Result.result == Cell.PathResult.ExitingCell) {
-                    Vector3f ClosestPoint3D = new Vector3f(
-                            Result.intersection.x, 0.0f, Result.intersection.y);
-                    cell.computeHeightOnCell(ClosestPoint3D);
+    private PackedCells getPackedCells() {
+        PackedCells cells = packedCells;
+        if (cells == null) {
+            cells = new PackedCells(cellList);
+            packedCells = cells;
+        }
+        return cells;
+    }
 
-                    ClosestPoint3D = ClosestPoint3D.subtract(point);
+    public float getClusterSize() {
+        return clusterSize;
+    }
 
-                    thisDistance = ClosestPoint3D.length();
+    /**
+     * Sets the size of the square clusters used for hierarchical path
+     * finding, the cluster graph is rebuilt on the next query.
+     * @param clusterSize
+     */
+    public void setClusterSize(float clusterSize) {
+        this.clusterSize = clusterSize;
+        clusterGraph = null;
+    }
 
-                    if (thisDistance < closestDistance) {
-                        closestDistance = thisDistance;
-                        closestCell = cell;
-                    }
-                }
-            }
+    /**
+     * Finds a route between two cells on the precomputed cluster graph. For
+     * each cluster the route enters, the entrance cell is added to the route,
+     * these can be used as intermediate goals for buildNavigationPath so long
+     * paths are computed cluster by cluster. Nothing is added if both cells
+     * are in the same cluster.
+     *
+     * @param startCell
+     * @param endCell
+     * @param route list the entrance cells are added to
+     * @return false if there is no route between the cells
+     */
+    public boolean findClusterRoute(Cell startCell, Cell endCell, List<Cell> route) {
+        ClusterGraph graph = clusterGraph;
+        if (graph == null) {
+            graph = new ClusterGraph(getPackedCells(), clusterSize);
+            clusterGraph = graph;
         }
-
-        return closestCell;
+        return graph.findRoute(startCell, endCell, route);
     }
 
     /**
-     * Build a navigation path using the provided points and the A* method
+     * Build a navigation path using the provided points and the A* method.
+     * Can be called from multiple threads at the same time as long as the
+     * mesh is not changed.
      */
     public boolean buildNavigationPath(Path navPath,
             Cell startCell, Vector3f startPos,
             Cell endCell, Vector3f endPos,
             float entityRadius) {
-        
-        // Increment our path finding session ID
-        // This Identifies each pathfinding session
-        // so we do not need to clear out old data
-        // in the cells from previous sessions.
-        sessionID++;
+        Corridor corridor = findCorridor(startCell, startPos, endCell, entityRadius);
+        if (corridor == null) {
+            return false;
+        }
+        buildNavigationPath(navPath, corridor, startPos, endPos, entityRadius);
+        return true;
+    }
+
+    /**
+     * Finds the corridor of cells between the start and the end cell, the
+     * corridor is taken from the cache if possible.
+     *
+     * @return the corridor or null if there is no path
+     */
+    public Corridor findCorridor(Cell startCell, Vector3f startPos, Cell endCell, float entityRadius) {
+        Corridor corridor = corridorCache.get(startCell, endCell, entityRadius);
+        if (corridor != null) {
+            return corridor;
+        }
+        int generation = corridorCache.getGeneration();
+        Heap heap = heaps.poll();
+        if (heap == null) {
+            heap = new Heap();
+        }
+        try {
+            corridor = findCorridor(heap, startCell, startPos, endCell);
+        } finally {
+            heaps.offer(heap);
+        }
+        if (corridor != null) {
+            corridorCache.put(corridor, entityRadius, generation);
+        }
+        return corridor;
+    }
+
+    /**
+     * @return the cache of corridors found by A*, can be used to check its
+     * hit rate
+     */
+    public CorridorCache getCorridorCache() {
+        return corridorCache;
+    }
+
+    private Corridor findCorridor(Heap heap, Cell startCell, Vector3f startPos, Cell endCell) {
+        PackedCells cells = getPackedCells();
+        int start = startCell.getIndex();
+        int end = endCell.getIndex();
 
         // load our data into the Heap object
-        // to prepare it for use.
-        heap.initialize(sessionID, startPos);
+        // to prepare it for use. This starts a new
+        // path finding session so we do not need to
+        // clear out old data from previous sessions.
+        heap.initialize(startPos, cells, start);
 
         // We are doing a reverse search, from EndCell to StartCell.
         // Push our EndCell onto the Heap at the first cell to be processed
-        endCell.queryForPath(heap, null, 0.0f);
+        heap.queryForPath(end, -1, 0.0f);
 
         // process the heap until empty, or a path is found
         boolean foundPath = false;
@@ -176,120 +269,62 @@ public class NavMesh implements Savable {
 
             // pop the top cell (the open cell with the lowest cost) off the
             // Heap
-            Node currentNode = heap.getTop();
+            int topCell = heap.getTop();
 
             // if this cell is our StartCell, we are done
-            if (currentNode.cell.equals(startCell)) {
+            if (topCell == start) {
                 foundPath = true;
             } else {
                 // Process the Cell, Adding it's neighbors to the Heap as needed
-                currentNode.cell.processCell(heap);
+                heap.processCell(topCell);
             }
         }
 
-        Vector2f intersectionPoint = new Vector2f();
-
-        // if we found a path, build a waypoint list
-        // out of the cells on the path
         if (!foundPath)
-            return false;
-
-        // Setup the Path object, clearing out any old data
-        navPath.initialize(this, startPos, startCell, endPos, endCell);
-
-        Vector3f lastWayPoint = startPos;
+            return null;
 
         // Step through each cell linked by our A* algorythm
-        // from StartCell to EndCell
-        Cell currentCell = startCell;
-        while (currentCell != null && currentCell != endCell) {
-            // add the link point of the cell as a way point (the exit
-            // wall's center)
-            int linkWall = currentCell.getArrivalWall();
-            Vector3f newWayPoint = currentCell.getWallMidpoint(linkWall).clone();
-
-            Line2D wall  = currentCell.getWall(linkWall);
-            float length = wall.length();
-            float distBlend = entityRadius / length;
-
-            Line2D lineToGoal = new Line2D(new Vector2f(lastWayPoint.x, lastWayPoint.z),
-                                           new Vector2f(endPos.x, endPos.z));
-            LineIntersect result = lineToGoal.intersect(wall, intersectionPoint);
-            switch (result){
-                case SegmentsIntersect:
-                    float d1 = wall.getPointA().distance(intersectionPoint);
-                    float d2 = wall.getPointB().distance(intersectionPoint);
-                    if (d1 > entityRadius && d2 > entityRadius){
-                        // we can fit through the wall if we go
-                        // directly to the goal.
-                        newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                    }else{
-                        // cannot fit directly.
-                        // try to find point where we can
-                        if (d1 < d2){
-                            intersectionPoint.interpolateLocal(wall.getPointA(), wall.getPointB(), distBlend);
-                            newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                        }else{
-                            intersectionPoint.interpolateLocal(wall.getPointB(), wall.getPointA(), distBlend);
-                            newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                        }
-                    }
-                    currentCell.computeHeightOnCell(newWayPoint);
-                    break;
-                case LinesIntersect:
-                case ABisectsB:
-                case BBisectsA:
-                    Vector2f lastPt2d  = new Vector2f(lastWayPoint.x, lastWayPoint.z);
-                    Vector2f endPos2d  = new Vector2f(endPos.x, endPos.z);
-
-                    Vector2f normalEnd = endPos2d.subtract(lastPt2d).normalizeLocal();
-                    Vector2f normalA   = wall.getPointA().subtract(lastPt2d).normalizeLocal();
-                    Vector2f normalB   = wall.getPointB().subtract(lastPt2d).normalizeLocal();
-                    if (normalA.dot(normalEnd) < normalB.dot(normalEnd)){
-                        // choose point b
-                        intersectionPoint.interpolateLocal(wall.getPointB(), wall.getPointA(), distBlend);
-                        newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                    }else{
-                        // choose point a
-                        intersectionPoint.interpolateLocal(wall.getPointA(), wall.getPointB(), distBlend);
-                        newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                    }
-                    currentCell.computeHeightOnCell(newWayPoint);
-
-                    break;
-                case CoLinear:
-                case Parallel:
-                    break;
+        // from StartCell to EndCell and store them in the corridor
+        int count = 1;
+        for (int cell = start; cell >= 0 && cell != end && count <= cells.getCellCount(); count++) {
+            cell = cells.getLink(cell, heap.getArrivalWall(cell));
+        }
+        Cell[] corridorCells = new Cell[count];
+        int[] exitWalls = new int[count];
+        int currentCell = start;
+        for (int i = 0; i < count; i++) {
+            if (currentCell < 0) {
+                return null;
+            }
+            corridorCells[i] = cells.getCell(currentCell);
+            if (i < count - 1) {
+                exitWalls[i] = heap.getArrivalWall(currentCell);
+                currentCell = cells.getLink(currentCell, exitWalls[i]);
+            } else {
+                exitWalls[i] = -1;
             }
-
-//                newWayPoint = snapPointToCell(currentCell, newWayPoint);
-            lastWayPoint = newWayPoint.clone();
-
-            navPath.addWaypoint(newWayPoint, currentCell);
-
-            // get the next cell
-            currentCell = currentCell.getLink(linkWall);
         }
-
-        // cap the end of the path.
-        navPath.finishPath();
-
-        // further: optimize the path
-        List<Waypoint> newPath = new ArrayList<Waypoint>();
-        Waypoint curWayPoint = navPath.getFirst();
-        newPath.add(curWayPoint);
-        while (curWayPoint != navPath.getLast()){
-            curWayPoint = navPath.getFurthestVisibleWayPoint(curWayPoint);
-            newPath.add(curWayPoint);
+        if (currentCell != end) {
+            return null;
         }
+        return new Corridor(corridorCells, exitWalls);
+    }
 
-        navPath.initialize(this, startPos, startCell, endPos, endCell);
-        for (Waypoint newWayPoint : newPath){
-            navPath.addWaypoint(newWayPoint.getPosition(), newWayPoint.getCell());
+    /**
+     * Builds the waypoints of a path through the corridor using string
+     * pulling, the funnel buffers are pooled like the heaps.
+     */
+    private void buildNavigationPath(Path navPath, Corridor corridor,
+            Vector3f startPos, Vector3f endPos, float entityRadius) {
+        Funnel funnel = funnels.poll();
+        if (funnel == null) {
+            funnel = new Funnel();
+        }
+        try {
+            funnel.buildPath(this, navPath, corridor, startPos, endPos, entityRadius);
+        } finally {
+            funnels.offer(funnel);
         }
-        navPath.finishPath();
-
-        return true;
     }
 
     /**
@@ -301,15 +336,36 @@ public class NavMesh implements Savable {
      * @return
      */
     public Cell resolveMotionOnMesh(Vector3f startPos, Cell startCell, Vector3f endPos, Vector3f modifiedEndPos) {
+        return resolveMotionOnMesh(startPos, startCell, endPos, modifiedEndPos,
+                new Line2D(new Vector2f(), new Vector2f()), new ClassifyResult());
+    }
+
+    /**
+     * Resolve a movement vector on the mesh using the given line and
+     * ClassifyResult for the intermediate results, so moving entities every
+     * frame does not create garbage.
+     *
+     * @param startPos
+     * @param startCell
+     * @param endPos
+     * @param modifiedEndPos
+     * @param motionLine scratch line, its points are overwritten
+     * @param result scratch result
+     * @return
+     */
+    Cell resolveMotionOnMesh(Vector3f startPos, Cell startCell, Vector3f endPos, Vector3f modifiedEndPos,
+            Line2D motionLine, ClassifyResult result) {
         int i = 0;
         // create a 2D motion path from our Start and End positions, tossing out
         // their Y values to project them
         // down to the XZ plane.
-        Line2D motionLine = new Line2D(new Vector2f(startPos.x, startPos.z),
-                new Vector2f(endPos.x, endPos.z));
+        motionLine.setPoints(startPos.x, startPos.z, endPos.x, endPos.z);
+        Vector2f motionStart = motionLine.getPointA();
+        Vector2f motionEnd = motionLine.getPointB();
 
-        // these three will hold the results of our tests against the cell walls
-        ClassifyResult result = null;
+        // this will hold the result of our tests against the cell walls, the
+        // ClassifyResult itself is reused for other tests in the loop
+        PathResult pathResult;
 
         // TestCell is the cell we are currently examining.
         Cell currentCell = startCell;
@@ -325,34 +381,32 @@ public class NavMesh implements Savable {
             // System.out.println("End is in cell");
             // else
             // System.out.println("End is NOT in cell");
-            result = currentCell.classifyPathToCell(motionLine);
+            pathResult = currentCell.classifyPathToCell(motionLine, result).result;
 
             // if exiting the cell...
-            if (result.result == PathResult.ExitingCell) {
+            if (pathResult == PathResult.ExitingCell) {
                 // Set if we are moving to an adjacent cell or we have hit a
                 // solid (unlinked) edge
                 if (result.cell != null) {
                     // moving on. Set our motion origin to the point of
                     // intersection with this cell
                     // and continue, using the new cell as our test cell.
-                    motionLine.setPointA(result.intersection);
+                    motionLine.setPoints(result.intersection.x, result.intersection.y, motionEnd.x, motionEnd.y);
                     currentCell = result.cell;
                 } else {
                     // we have hit a solid wall. Resolve the collision and
                     // correct our path.
-                    motionLine.setPointA(result.intersection);
-                    currentCell.projectPathOnCellWall(result.side, motionLine);
+                    motionLine.setPoints(result.intersection.x, result.intersection.y, motionEnd.x, motionEnd.y);
+                    currentCell.projectPathOnCellWall(result.side, motionLine, result);
 
                     // add some friction to the new MotionPath since we are
                     // scraping against a wall.
                     // we do this by reducing the magnatude of our motion by 10%
-                    Vector2f Direction = motionLine.getPointB().subtract(
-                            motionLine.getPointA()).mult(0.9f);
-                    // Direction.mult(0.9f);
-                    motionLine.setPointB(motionLine.getPointA().add(
-                            Direction));
+                    motionLine.setPoints(motionStart.x, motionStart.y,
+                            motionStart.x + (motionEnd.x - motionStart.x) * 0.9f,
+                            motionStart.y + (motionEnd.y - motionStart.y) * 0.9f);
                 }
-            } else if (result.result == Cell.PathResult.NoRelationship) {
+            } else if (pathResult == Cell.PathResult.NoRelationship) {
                 // Although theoretically we should never encounter this case,
                 // we do sometimes find ourselves standing directly on a vertex
                 // of the cell.
@@ -361,28 +415,26 @@ public class NavMesh implements Savable {
                 // To accomodate this rare case, we can force our starting point
                 // to be within
                 // the current cell by nudging it back so we may continue.
-                Vector2f NewOrigin = motionLine.getPointA();
-                // NewOrigin.x -= 0.01f;
-                currentCell.forcePointToCellColumn(NewOrigin);
-                motionLine.setPointA(NewOrigin);
+                currentCell.forcePointToCellColumn(motionStart, result);
+                motionLine.setPoints(motionStart, motionEnd);
             }
         }//
         // Keep testing until we find our ending cell or stop moving due to
         // friction
         //
-        while ((result.result != Cell.PathResult.EndingCell)
-                && (motionLine.getPointA().x != motionLine.getPointB().x && motionLine.getPointA().y != motionLine.getPointB().y) && i < 5000);
+        while ((pathResult != Cell.PathResult.EndingCell)
+                && (motionStart.x != motionEnd.x && motionStart.y != motionEnd.y) && i < 5000);
         //
         if (i >= 5000) {
-            System.out.println("Loop detected in ResolveMotionOnMesh");
+            Logger.getLogger(NavMesh.class.getName()).log(Level.WARNING, "Loop detected in ResolveMotionOnMesh");
         }
         // we now have our new host cell
 
         // Update the new control point position,
         // solving for Y using the Plane member of the NavigationCell
-        modifiedEndPos.x = motionLine.getPointB().x;
+        modifiedEndPos.x = motionEnd.x;
         modifiedEndPos.y = 0.0f;
-        modifiedEndPos.z = motionLine.getPointB().y;
+        modifiedEndPos.z = motionEnd.y;
         currentCell.computeHeightOnCell(modifiedEndPos);
 
         return currentCell;
@@ -398,18 +450,16 @@ public class NavMesh implements Savable {
      * @return
      */
     boolean isInLineOfSight(Cell StartCell, Vector3f StartPos, Vector3f EndPos) {
-        Line2D MotionPath = new Line2D(new Vector2f(StartPos.x, StartPos.z),
-                new Vector2f(EndPos.x, EndPos.z));
+        ClassifyResult result = new ClassifyResult();
+
+        StartCell.classifyPathToCell(StartPos.x, StartPos.z, EndPos.x, EndPos.z, result);
 
-        Cell testCell = StartCell;
-        Cell.ClassifyResult result = testCell.classifyPathToCell(MotionPath);
-        
         while (result.result == Cell.PathResult.ExitingCell) {
             if (result.cell == null)// hit a wall, so the point is not visible
             {
                 return false;
             }
-            result = result.cell.classifyPathToCell(MotionPath);
+            result.cell.classifyPathToCell(StartPos.x, StartPos.z, EndPos.x, EndPos.z, result);
 
         }
 
@@ -417,19 +467,174 @@ public class NavMesh implements Savable {
     }
 
     /**
-     * Link all the cells that are in our pool
+     * Link all the cells that are in our pool. Vertices closer than the link
+     * epsilon are welded to one id first, then each cell edge is looked up by
+     * its pair of vertex ids so linking is linear in the number of cells.
      */
     public void linkCells() {
-//        for (int i = 0; i < cellList.size(); i++){
-//            for (int j = i+1; j < cellList.size(); j++){
-//                cellList.get(i).checkAndLink(cellList.get(j));
-//            }
-//        }
-        for (Cell pCellA : cellList) {
-            for (Cell pCellB : cellList) {
-                if (pCellA != pCellB) {
-                    pCellA.checkAndLink(pCellB, 0.001f);
+        cellsChanged();
+        float epsilon = 0.001f;
+        int[] vertexIds = weldVertices(epsilon);
+        HashMap<Long, Integer> openEdges = new HashMap<Long, Integer>(cellList.size() * 2);
+        for (int i = 0; i < cellList.size(); i++) {
+            Cell cell = cellList.get(i);
+            for (int side = 0; side < 3; side++) {
+                int vertA = vertexIds[i * 3 + side];
+                int vertB = vertexIds[i * 3 + (side + 1) % 3];
+                if (vertA == vertB || cell.getLink(side) != null) {
+                    continue;
                 }
+                long key = ((long) Math.min(vertA, vertB) << 32) | Math.max(vertA, vertB);
+                Integer other = openEdges.remove(key);
+                if (other == null) {
+                    openEdges.put(key, i * 3 + side);
+                } else {
+                    Cell otherCell = cellList.get(other / 3);
+                    if (otherCell != cell) {
+                        cell.setLink(side, otherCell);
+                        otherCell.setLink(other % 3, cell);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Assigns an id to each cell vertex (cell index * 3 + vertex), vertices
+     * within the squared distance epsilon of each other get the same id.
+     * Vertices are bucketed in a hash grid so only neighbouring buckets have
+     * to be compared.
+     */
+    private int[] weldVertices(float epsilon) {
+        float bucketSize = (float) Math.sqrt(epsilon);
+        int count = cellList.size() * 3;
+        int[] ids = new int[count];
+        Vector3f[] welded = new Vector3f[count];
+        int[] next = new int[count];
+        int weldedCount = 0;
+        HashMap<Long, Integer> buckets = new HashMap<Long, Integer>(count * 2);
+        for (int i = 0; i < count; i++) {
+            Vector3f vertex = cellList.get(i / 3).getVertex(i % 3);
+            int bx = (int) Math.floor(vertex.x / bucketSize);
+            int by = (int) Math.floor(vertex.y / bucketSize);
+            int bz = (int) Math.floor(vertex.z / bucketSize);
+            int id = -1;
+            for (int x = bx - 1; x <= bx + 1 && id < 0; x++) {
+                for (int y = by - 1; y <= by + 1 && id < 0; y++) {
+                    for (int z = bz - 1; z <= bz + 1 && id < 0; z++) {
+                        Integer head = buckets.get(getBucketKey(x, y, z));
+                        for (int w = head == null ? -1 : head; w >= 0; w = next[w]) {
+                            if (welded[w].distanceSquared(vertex) <= epsilon) {
+                                id = w;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            if (id < 0) {
+                id = weldedCount++;
+                welded[id] = vertex;
+                Integer head = buckets.put(getBucketKey(bx, by, bz), id);
+                next[id] = head == null ? -1 : head;
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private static long getBucketKey(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+
+    /**
+     * builds the cell grid and the cluster graph after the mesh was loaded
+     */
+    private synchronized void buildIndices() {
+        meshVersion++;
+        corridorCache.clear();
+        packedCells = new PackedCells(cellList);
+        cellGrid = new CellGrid(packedCells);
+        clusterGraph = new ClusterGraph(packedCells, clusterSize);
+    }
+
+    /**
+     * drops all data built from the cells after the cells or their links
+     * changed
+     */
+    private synchronized void cellsChanged() {
+        meshVersion++;
+        packedCells = null;
+        cellGrid = null;
+        clusterGraph = null;
+        corridorCache.clear();
+    }
+
+    /**
+     * @return a number that changes whenever the cells or their links change
+     */
+    int getMeshVersion() {
+        return meshVersion;
+    }
+
+    /**
+     * Sets the blocked flag of the given cells, path finding does not pass
+     * through blocked cells. The flags are only set if the mesh did not
+     * change since the given version. The packed cell data is replaced, not
+     * changed, so queries that are running are not affected.
+     *
+     * @param version the mesh version the flags were computed for
+     * @param cellIndices
+     * @param flags the new flag for each of the cells
+     * @return true if any flag was changed
+     */
+    synchronized boolean setBlocked(int version, int[] cellIndices, boolean[] flags) {
+        if (version != meshVersion) {
+            return false;
+        }
+        PackedCells cells = getPackedCells();
+        boolean[] blocked = null;
+        for (int i = 0; i < cellIndices.length; i++) {
+            if (cells.isBlocked(cellIndices[i]) != flags[i]) {
+                if (blocked == null) {
+                    blocked = cells.copyBlocked();
+                }
+                blocked[cellIndices[i]] = flags[i];
+            }
+        }
+        if (blocked == null) {
+            return false;
+        }
+        packedCells = new PackedCells(cells, blocked);
+        corridorCache.clear();
+        return true;
+    }
+
+    /**
+     * Updates the cluster graph after cells were blocked or unblocked, can be
+     * called from any thread. Only the clusters around the changed cells are
+     * searched again, the old graph is used until the new one is done.
+     *
+     * @param version the mesh version the graph is built for
+     */
+    void rebuildClusterGraph(int version) {
+        PackedCells cells;
+        ClusterGraph oldGraph;
+        synchronized (this) {
+            cells = packedCells;
+            oldGraph = clusterGraph;
+        }
+        if (cells == null || version != meshVersion) {
+            return;
+        }
+        //the old graph belongs to the cells of this mesh version, it is
+        //reset when the cells or the cluster size change
+        ClusterGraph graph = oldGraph != null && oldGraph.getClusterSize() == clusterSize
+                ? new ClusterGraph(oldGraph, cells)
+                : new ClusterGraph(cells, clusterSize);
+        synchronized (this) {
+            if (version == meshVersion && cells == packedCells) {
+                clusterGraph = graph;
             }
         }
     }
@@ -467,6 +672,7 @@ public class NavMesh implements Savable {
         }
 
         linkCells();
+        buildIndices();
     }
 
     public void loadFromMesh(Mesh mesh) {
@@ -502,16 +708,187 @@ public class NavMesh implements Savable {
         }
 
         linkCells();
+        buildIndices();
+    }
+
+    /**
+     * Writes the cells and their links to a binary file that can be loaded
+     * with readBinary() without generating and linking the mesh again. The
+     * file contains a header, the cell data with the precomputed geometry of
+     * each cell and the index of the linked cell on each side or -1.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void writeBinary(File file) throws IOException {
+        float[] cellData = getCellData();
+        int[] links = getLinkData();
+        ByteBuffer buffer = ByteBuffer.allocate(BINARY_HEADER_SIZE + cellData.length * 4 + links.length * 4);
+        buffer.putInt(BINARY_MAGIC);
+        buffer.putInt(BINARY_VERSION);
+        buffer.putInt(cellList.size());
+        buffer.asFloatBuffer().put(cellData);
+        buffer.position(buffer.position() + cellData.length * 4);
+        buffer.asIntBuffer().put(links);
+        buffer.clear();
+
+        // write to a temporary file first so a failed write never leaves a
+        // truncated file that would be loaded later
+        File tempFile = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tempFile, "rw");
+        try {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace navmesh file " + file);
+        }
+    }
+
+    /**
+     * Replaces the cells of this mesh with the ones in the binary file
+     * written by writeBinary(). The file is memory mapped and read in bulk,
+     * the links and cell geometry are restored from the file so no linking
+     * or computing is done.
+     *
+     * @param file
+     * @throws IOException if the file can not be read or is not a valid
+     * navmesh file
+     */
+    public void readBinary(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size < BINARY_HEADER_SIZE) {
+                throw new IOException("Navmesh file " + file + " is truncated");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != BINARY_MAGIC || buffer.getInt() != BINARY_VERSION) {
+                throw new IOException("Navmesh file " + file + " has an unknown format");
+            }
+            int cellCount = buffer.getInt();
+            if (cellCount < 0 || size != BINARY_HEADER_SIZE + cellCount * (Cell.DATA_SIZE + 3) * 4L) {
+                throw new IOException("Navmesh file " + file + " is truncated");
+            }
+            float[] cellData = new float[cellCount * Cell.DATA_SIZE];
+            int[] links = new int[cellCount * 3];
+            buffer.asFloatBuffer().get(cellData);
+            buffer.position(buffer.position() + cellData.length * 4);
+            buffer.asIntBuffer().get(links);
+            setCells(cellData, links);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the data of all cells as written by Cell.writeData()
+     */
+    private float[] getCellData() {
+        float[] cellData = new float[cellList.size() * Cell.DATA_SIZE];
+        for (int i = 0; i < cellList.size(); i++) {
+            cellList.get(i).writeData(cellData, i * Cell.DATA_SIZE);
+        }
+        return cellData;
+    }
+
+    /**
+     * @return the index of the linked cell for each side of each cell, -1
+     * for sides without link
+     */
+    private int[] getLinkData() {
+        int[] links = new int[cellList.size() * 3];
+        for (int i = 0; i < cellList.size(); i++) {
+            Cell cell = cellList.get(i);
+            for (int side = 0; side < 3; side++) {
+                Cell link = cell.getLink(side);
+                links[i * 3 + side] = link == null ? -1 : link.getIndex();
+            }
+        }
+        return links;
+    }
+
+    /**
+     * replaces the cells with the ones stored in the arrays returned by
+     * getCellData() and getLinkData()
+     */
+    private void setCells(float[] cellData, int[] links) throws IOException {
+        int cellCount = cellData.length / Cell.DATA_SIZE;
+        if (cellData.length != cellCount * Cell.DATA_SIZE || links.length != cellCount * 3) {
+            throw new IOException("NavMesh data has an invalid size");
+        }
+        ArrayList<Cell> cells = new ArrayList<Cell>(cellCount);
+        for (int i = 0; i < cellCount; i++) {
+            Cell cell = new Cell();
+            cell.readData(cellData, i * Cell.DATA_SIZE);
+            cell.setIndex(i);
+            cells.add(cell);
+        }
+        for (int i = 0; i < links.length; i++) {
+            int link = links[i];
+            if (link >= cellCount) {
+                throw new IOException("NavMesh data has an invalid link");
+            }
+            if (link >= 0) {
+                cells.get(i / 3).setLink(i % 3, cells.get(link));
+            }
+        }
+        clear();
+        cellList = cells;
+        buildIndices();
+    }
+
+    /**
+     * Creates a mesh of the cells, e.g. to display the navmesh for debugging.
+     * @return
+     */
+    public Mesh createMesh() {
+        int cellCount = cellList.size();
+        float[] positions = new float[cellCount * 9];
+        int[] indices = new int[cellCount * 3];
+        for (int i = 0; i < cellCount; i++) {
+            Cell cell = cellList.get(i);
+            for (int v = 0; v < 3; v++) {
+                Vector3f vertex = cell.getVertex(v);
+                positions[i * 9 + v * 3] = vertex.x;
+                positions[i * 9 + v * 3 + 1] = vertex.y;
+                positions[i * 9 + v * 3 + 2] = vertex.z;
+                indices[i * 3 + v] = i * 3 + v;
+            }
+        }
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(Type.Position, 3, positions);
+        mesh.setBuffer(Type.Index, 3, indices);
+        mesh.updateBound();
+        return mesh;
     }
 
     public void write(JmeExporter e) throws IOException {
         OutputCapsule capsule = e.getCapsule(this);
-        capsule.writeSavableArrayList(cellList, "cellarray", null);
+        capsule.write(getCellData(), "celldata", null);
+        capsule.write(getLinkData(), "links", null);
     }
 
     @SuppressWarnings("unchecked")
     public void read(JmeImporter e) throws IOException {
         InputCapsule capsule = e.getCapsule(this);
+        float[] cellData = capsule.readFloatArray("celldata", null);
+        if (cellData != null) {
+            setCells(cellData, capsule.readIntArray("links", new int[0]));
+            return;
+        }
+        // older files store the cells as Savables
         cellList = (ArrayList<Cell>) capsule.readSavableArrayList("cellarray", new ArrayList<Cell>());
+        for (int i = 0; i < cellList.size(); i++) {
+            cellList.get(i).setIndex(i);
+        }
+        buildIndices();
     }
 }
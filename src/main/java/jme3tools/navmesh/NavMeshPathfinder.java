@@ -3,6 +3,9 @@ package jme3tools.navmesh;
 import jme3tools.navmesh.Path.Waypoint;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
 public class NavMeshPathfinder {
 
@@ -20,6 +23,23 @@ public class NavMeshPathfinder {
 
     private Waypoint nextWaypoint;
 
+    /**
+     * scratch objects for onMove
+     */
+    private final Vector3f moveStart = new Vector3f();
+    private final Line2D motionLine = new Line2D(new Vector2f(), new Vector2f());
+    private final Cell.ClassifyResult classifyResult = new Cell.ClassifyResult();
+    /**
+     * the position returned by onMove(Vector3f)
+     */
+    private final Vector3f moveResult = new Vector3f();
+
+    /**
+     * entrance cells of the clusters on the way to the goal, the path is
+     * only computed to the next one of these
+     */
+    private List<Cell> route = new ArrayList<Cell>();
+
     public NavMeshPathfinder(NavMesh navMesh){
         this.navMesh = navMesh;
     }
@@ -50,23 +70,76 @@ public class NavMeshPathfinder {
         return currentPos3d;
     }
 
+    /**
+     * Computes a path to the goal. Goals in other clusters of the NavMesh are
+     * first routed on the cluster graph, the detailed path is then only
+     * computed up to the next cluster and extended while moving.
+     */
     public boolean computePath(Vector3f goal){
         goalPos3d = goal;
         goalPos = new Vector2f(goalPos3d.getX(), goalPos3d.getZ());
         Vector3f goalPos2d = new Vector3f(goalPos.getX(), 0, goalPos.getY());
         goalCell = navMesh.findClosestCell(goalPos2d);
-        boolean result = navMesh.buildNavigationPath(path, currentCell, currentPos3d, goalCell, goalPos3d, entityRadius);
-        if (!result){
+        route.clear();
+        if (!navMesh.findClusterRoute(currentCell, goalCell, route) || !computeNextSegment()){
+            route.clear();
             goalPos = null;
             goalCell = null;
             return false;
         }
+        return true;
+    }
+
+    /**
+     * computes the path from the current position to the next cluster
+     * entrance or the goal
+     */
+    private boolean computeNextSegment(){
+        boolean result;
+        if (route.isEmpty()){
+            result = navMesh.buildNavigationPath(path, currentCell, currentPos3d, goalCell, goalPos3d, entityRadius);
+        }else{
+            Cell entrance = route.remove(0);
+            result = navMesh.buildNavigationPath(path, currentCell, currentPos3d, entrance, entrance.getCenter().clone(), entityRadius);
+        }
+        if (result){
+            nextWaypoint = path.getFirst();
+        }
+        return result;
+    }
+
+    /**
+     * Computes the path to the goal from the current position on the worker
+     * threads of the service. Once the future is done the path has to be
+     * applied on the update thread using setPath(). The path follows the same
+     * cluster route as computePath(), but goes through all clusters.
+     */
+    public Future<Path> computePathAsync(PathfindingService service, Vector3f goal){
+        return service.findPath(currentPos3d, goal, entityRadius);
+    }
+
+    /**
+     * Sets a path computed by a PathfindingService
+     * @param newPath the path or null if no path was found
+     * @return false if no path was set
+     */
+    public boolean setPath(Path newPath){
+        route.clear();
+        if (newPath == null){
+            clearPath();
+            return false;
+        }
+        path = newPath;
+        goalPos3d = path.getEnd().getPosition();
+        goalPos = new Vector2f(goalPos3d.getX(), goalPos3d.getZ());
+        goalCell = path.getEnd().getCell();
         nextWaypoint = path.getFirst();
         return true;
     }
 
     public void clearPath(){
         path.clear();
+        route.clear();
         goalPos = null;
         goalCell = null;
         nextWaypoint = null;
@@ -85,28 +158,54 @@ public class NavMeshPathfinder {
         return currentPos3d.distance(nextWaypoint.getPosition());
     }
     
+    /**
+     * Resolves the movement on the mesh, the new position is stored in a
+     * vector of this pathfinder that is reused by the next call, copy it to
+     * keep it.
+     * @param moveVec
+     * @return the new position
+     */
     public Vector3f onMove(Vector3f moveVec){
-        if (moveVec.equals(Vector3f.ZERO))
-            return currentPos3d;
+        return onMove(moveVec, moveResult);
+    }
 
-        Vector3f newPos2d = new Vector3f(currentPos3d);
-        newPos2d.addLocal(moveVec);
-        newPos2d.setY(0);
+    /**
+     * Resolves the movement on the mesh like onMove(Vector3f) but stores the
+     * new position in the given vector, no objects are created.
+     * @param moveVec
+     * @param store the vector to store the new position in, can be the
+     * vector returned by getPosition()
+     * @return store
+     */
+    public Vector3f onMove(Vector3f moveVec, Vector3f store){
+        if (moveVec.equals(Vector3f.ZERO))
+            return store.set(currentPos3d);
 
-        Vector3f currentPos2d = new Vector3f(currentPos3d);
-        currentPos2d.setY(0);
+        float height = currentPos3d.getY();
+        moveStart.set(currentPos3d);
+        moveStart.setY(0);
+        store.set(moveStart);
+        store.addLocal(moveVec);
+        store.setY(0);
 
-        Cell nextCell = navMesh.resolveMotionOnMesh(currentPos2d, currentCell, newPos2d, newPos2d);
+        Cell nextCell = navMesh.resolveMotionOnMesh(moveStart, currentCell, store, store, motionLine, classifyResult);
         currentCell = nextCell;
-        newPos2d.setY(currentPos3d.getY());
-        return newPos2d;
+        store.setY(height);
+        return store;
     }
 
     public boolean isAtGoalWaypoint(){
-        return nextWaypoint == path.getLast();
+        return nextWaypoint == path.getLast() && route.isEmpty();
     }
 
     public void gotoToNextWaypoint(){
+        if (nextWaypoint == path.getLast() && !route.isEmpty()){
+            // reached a cluster entrance, compute the path through the next cluster
+            if (!computeNextSegment()){
+                route.clear();
+                return;
+            }
+        }
         nextWaypoint = path.getFurthestVisibleWayPoint(nextWaypoint);
         Vector3f waypt = nextWaypoint.getPosition();
         currentPos3d.setX(waypt.getX());
@@ -0,0 +1,410 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Divides the cells of a NavMesh into square tiles on the X/Z plane so the
+ * mesh can be updated for obstacles that are added or removed while the
+ * level is running. When an obstacle changes, only the tiles it overlaps are
+ * rebuilt on a background thread: the cells of these tiles that are covered
+ * by an obstacle are blocked, path finding does not pass through them. The
+ * cells and their links stay the same so nothing has to be linked again,
+ * after a batch of tiles the cluster graph is updated in the background.
+ *
+ * Cells are not split, so a cell is either blocked as a whole or not at all.
+ * A cell is blocked when an obstacle covers its center or more than half of
+ * its area. Small obstacles on large cells leave the cells passable, paths
+ * can run across the obstacle and entities have to move around it with
+ * their physics. Several obstacles that each cover a small part of a cell
+ * do not block it either.
+ *
+ * A NavMeshTiles belongs to the mesh as it was when it was created, updates
+ * are dropped once the mesh is loaded again.
+ *
+ * @author normenhansen
+ */
+public class NavMeshTiles {
+
+    /**
+     * obstacles further than this above or below a cell do not block it
+     */
+    private static final float HEIGHT_TOLERANCE = 1.0f;
+    private final NavMesh navMesh;
+    private final int meshVersion;
+    private final float tileSize;
+    private final float minX;
+    private final float minZ;
+    private final int columns;
+    private final int rows;
+    /**
+     * cells of each tile, the cells of tile i span tileOffsets[i] to
+     * tileOffsets[i + 1] in tileCells
+     */
+    private final int[] tileOffsets;
+    private final int[] tileCells;
+    /**
+     * min x, min z, max x and max z of the cells of each tile, cells can
+     * reach out of their tile
+     */
+    private final float[] tileBounds;
+    /**
+     * copy of the cell vertices so tiles can be rebuilt while the mesh is
+     * used on other threads
+     */
+    private final float[] vertices;
+    /**
+     * min x, y, z and max x, y, z of each obstacle
+     */
+    private final HashMap<Long, float[]> obstacles = new HashMap<Long, float[]>();
+    private final boolean[] dirtyTiles;
+    private boolean updateScheduled = false;
+    private ExecutorService executor;
+
+    /**
+     * Creates the tiles for the current cells of the mesh.
+     *
+     * @param navMesh
+     * @param tileSize the edge length of the square tiles
+     */
+    public NavMeshTiles(NavMesh navMesh, float tileSize) {
+        this.navMesh = navMesh;
+        this.meshVersion = navMesh.getMeshVersion();
+        this.tileSize = tileSize;
+        int count = navMesh.getNumCells();
+        vertices = new float[count * 9];
+        float lowX = Float.MAX_VALUE, lowZ = Float.MAX_VALUE;
+        float highX = -Float.MAX_VALUE, highZ = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Cell cell = navMesh.getCell(i);
+            for (int v = 0; v < 3; v++) {
+                Vector3f vertex = cell.getVertex(v);
+                vertices[i * 9 + v * 3] = vertex.x;
+                vertices[i * 9 + v * 3 + 1] = vertex.y;
+                vertices[i * 9 + v * 3 + 2] = vertex.z;
+            }
+            Vector3f center = cell.getCenter();
+            lowX = Math.min(lowX, center.x);
+            lowZ = Math.min(lowZ, center.z);
+            highX = Math.max(highX, center.x);
+            highZ = Math.max(highZ, center.z);
+        }
+        minX = count == 0 ? 0 : lowX;
+        minZ = count == 0 ? 0 : lowZ;
+        columns = count == 0 ? 1 : (int) ((highX - lowX) / tileSize) + 1;
+        rows = count == 0 ? 1 : (int) ((highZ - lowZ) / tileSize) + 1;
+        int tileCount = columns * rows;
+
+        //assign the cells to the tile of their center
+        int[] cellTiles = new int[count];
+        tileOffsets = new int[tileCount + 1];
+        for (int i = 0; i < count; i++) {
+            Vector3f center = navMesh.getCell(i).getCenter();
+            int column = Math.min((int) ((center.x - minX) / tileSize), columns - 1);
+            int row = Math.min((int) ((center.z - minZ) / tileSize), rows - 1);
+            cellTiles[i] = row * columns + column;
+            tileOffsets[cellTiles[i] + 1]++;
+        }
+        for (int i = 0; i < tileCount; i++) {
+            tileOffsets[i + 1] += tileOffsets[i];
+        }
+        tileCells = new int[count];
+        tileBounds = new float[tileCount * 4];
+        for (int i = 0; i < tileCount; i++) {
+            tileBounds[i * 4] = Float.MAX_VALUE;
+            tileBounds[i * 4 + 1] = Float.MAX_VALUE;
+            tileBounds[i * 4 + 2] = -Float.MAX_VALUE;
+            tileBounds[i * 4 + 3] = -Float.MAX_VALUE;
+        }
+        int[] fill = new int[tileCount];
+        System.arraycopy(tileOffsets, 0, fill, 0, tileCount);
+        for (int i = 0; i < count; i++) {
+            int tile = cellTiles[i];
+            tileCells[fill[tile]++] = i;
+            for (int v = 0; v < 3; v++) {
+                float x = vertices[i * 9 + v * 3];
+                float z = vertices[i * 9 + v * 3 + 2];
+                tileBounds[tile * 4] = Math.min(tileBounds[tile * 4], x);
+                tileBounds[tile * 4 + 1] = Math.min(tileBounds[tile * 4 + 1], z);
+                tileBounds[tile * 4 + 2] = Math.max(tileBounds[tile * 4 + 2], x);
+                tileBounds[tile * 4 + 3] = Math.max(tileBounds[tile * 4 + 3], z);
+            }
+        }
+        dirtyTiles = new boolean[tileCount];
+    }
+
+    public int getTileCount() {
+        return dirtyTiles.length;
+    }
+
+    public float getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Adds an obstacle or moves an existing one, the tiles it overlaps are
+     * rebuilt in the background.
+     *
+     * @param id the id of the obstacle, e.g. the entity id
+     * @param min the minimum corner of the obstacle bounds
+     * @param max the maximum corner of the obstacle bounds
+     */
+    public synchronized void addObstacle(long id, Vector3f min, Vector3f max) {
+        float[] bounds = new float[]{min.x, min.y, min.z, max.x, max.y, max.z};
+        float[] old = obstacles.put(id, bounds);
+        if (old != null) {
+            markTiles(old);
+        }
+        markTiles(bounds);
+    }
+
+    /**
+     * Removes the obstacle, the tiles it overlapped are rebuilt in the
+     * background.
+     *
+     * @param id
+     */
+    public synchronized void removeObstacle(long id) {
+        float[] old = obstacles.remove(id);
+        if (old != null) {
+            markTiles(old);
+        }
+    }
+
+    public synchronized void clearObstacles() {
+        for (float[] bounds : obstacles.values()) {
+            markTiles(bounds);
+        }
+        obstacles.clear();
+    }
+
+    public synchronized int getObstacleCount() {
+        return obstacles.size();
+    }
+
+    /**
+     * @return true while tiles are waiting to be rebuilt
+     */
+    public synchronized boolean isUpdatePending() {
+        return updateScheduled;
+    }
+
+    /**
+     * stops the background thread, pending tile updates are dropped
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        updateScheduled = false;
+    }
+
+    /**
+     * marks the tiles overlapping the bounds as dirty and schedules the
+     * update if needed
+     */
+    private void markTiles(float[] bounds) {
+        boolean marked = false;
+        for (int i = 0; i < dirtyTiles.length; i++) {
+            if (tileOffsets[i] != tileOffsets[i + 1]
+                    && bounds[0] < tileBounds[i * 4 + 2] && bounds[3] > tileBounds[i * 4]
+                    && bounds[2] < tileBounds[i * 4 + 3] && bounds[5] > tileBounds[i * 4 + 1]) {
+                dirtyTiles[i] = true;
+                marked = true;
+            }
+        }
+        if (marked && !updateScheduled) {
+            updateScheduled = true;
+            getExecutor().execute(new Runnable() {
+
+                public void run() {
+                    updateTiles();
+                }
+            });
+        }
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "NavMeshTiles");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * rebuilds the dirty tiles until none are left, then the cluster graph
+     */
+    private void updateTiles() {
+        boolean changed = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Integer> tiles = new ArrayList<Integer>();
+            List<float[]> obstacleList;
+            synchronized (this) {
+                for (int i = 0; i < dirtyTiles.length; i++) {
+                    if (dirtyTiles[i]) {
+                        dirtyTiles[i] = false;
+                        tiles.add(i);
+                    }
+                }
+                if (tiles.isEmpty()) {
+                    updateScheduled = false;
+                    break;
+                }
+                obstacleList = new ArrayList<float[]>(obstacles.values());
+            }
+            for (int i = 0; i < tiles.size(); i++) {
+                changed |= rebuildTile(tiles.get(i), obstacleList);
+            }
+        }
+        if (changed) {
+            navMesh.rebuildClusterGraph(meshVersion);
+        }
+    }
+
+    /**
+     * computes which cells of the tile are blocked by the obstacles
+     * @return true if the blocked cells of the tile changed
+     */
+    private boolean rebuildTile(int tile, List<float[]> obstacleList) {
+        List<float[]> tileObstacles = new ArrayList<float[]>();
+        for (int i = 0; i < obstacleList.size(); i++) {
+            float[] bounds = obstacleList.get(i);
+            if (bounds[0] < tileBounds[tile * 4 + 2] && bounds[3] > tileBounds[tile * 4]
+                    && bounds[2] < tileBounds[tile * 4 + 3] && bounds[5] > tileBounds[tile * 4 + 1]) {
+                tileObstacles.add(bounds);
+            }
+        }
+        int start = tileOffsets[tile];
+        int[] cells = new int[tileOffsets[tile + 1] - start];
+        boolean[] flags = new boolean[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = tileCells[start + i];
+            for (int j = 0; j < tileObstacles.size() && !flags[i]; j++) {
+                flags[i] = blocks(cells[i], tileObstacles.get(j));
+            }
+        }
+        return navMesh.setBlocked(meshVersion, cells, flags);
+    }
+
+    /**
+     * Tests if the obstacle blocks the cell, the obstacle has to cover the
+     * center or more than half of the area of the cell on the X/Z plane.
+     */
+    private boolean blocks(int cell, float[] bounds) {
+        if (!overlaps(cell, bounds)) {
+            return false;
+        }
+        int v = cell * 9;
+        float centerX = (vertices[v] + vertices[v + 3] + vertices[v + 6]) / 3f;
+        float centerZ = (vertices[v + 2] + vertices[v + 5] + vertices[v + 8]) / 3f;
+        if (centerX > bounds[0] && centerX < bounds[3] && centerZ > bounds[2] && centerZ < bounds[5]) {
+            return true;
+        }
+        //clip the triangle to the box, at most 7 points remain
+        float[] polygon = new float[14];
+        float[] clipped = new float[14];
+        for (int i = 0; i < 3; i++) {
+            polygon[i * 2] = vertices[v + i * 3];
+            polygon[i * 2 + 1] = vertices[v + i * 3 + 2];
+        }
+        float cellArea = getArea(polygon, 3);
+        int count = clip(polygon, 3, clipped, 0, bounds[0], 1);
+        count = clip(clipped, count, polygon, 0, bounds[3], -1);
+        count = clip(polygon, count, clipped, 1, bounds[2], 1);
+        count = clip(clipped, count, polygon, 1, bounds[5], -1);
+        return getArea(polygon, count) > cellArea * 0.5f;
+    }
+
+    /**
+     * clips the polygon to the side of the line where the x (axis 0) or z
+     * (axis 1) coordinate minus the value has the given sign
+     * @return the number of points of the clipped polygon
+     */
+    private static int clip(float[] polygon, int count, float[] store, int axis, float value, float sign) {
+        int storeCount = 0;
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            float distanceA = sign * (polygon[i * 2 + axis] - value);
+            float distanceB = sign * (polygon[j * 2 + axis] - value);
+            if (distanceA >= 0) {
+                store[storeCount * 2] = polygon[i * 2];
+                store[storeCount * 2 + 1] = polygon[i * 2 + 1];
+                storeCount++;
+            }
+            if ((distanceA >= 0) != (distanceB >= 0)) {
+                float t = distanceA / (distanceA - distanceB);
+                store[storeCount * 2] = polygon[i * 2] + (polygon[j * 2] - polygon[i * 2]) * t;
+                store[storeCount * 2 + 1] = polygon[i * 2 + 1] + (polygon[j * 2 + 1] - polygon[i * 2 + 1]) * t;
+                storeCount++;
+            }
+        }
+        return storeCount;
+    }
+
+    private static float getArea(float[] polygon, int count) {
+        float area = 0;
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            area += polygon[i * 2] * polygon[j * 2 + 1] - polygon[j * 2] * polygon[i * 2 + 1];
+        }
+        return Math.abs(area) * 0.5f;
+    }
+
+    /**
+     * Tests if the triangle of the cell overlaps the obstacle on the X/Z
+     * plane using the separating axes of the box and the triangle. Touching
+     * is not overlapping, so obstacles that only touch a cell do not block
+     * it.
+     */
+    private boolean overlaps(int cell, float[] bounds) {
+        int v = cell * 9;
+        float lowY = Math.min(vertices[v + 1], Math.min(vertices[v + 4], vertices[v + 7]));
+        float highY = Math.max(vertices[v + 1], Math.max(vertices[v + 4], vertices[v + 7]));
+        if (bounds[1] > highY + HEIGHT_TOLERANCE || bounds[4] < lowY - HEIGHT_TOLERANCE) {
+            return false;
+        }
+        //the axes of the box
+        if (Math.max(vertices[v], Math.max(vertices[v + 3], vertices[v + 6])) <= bounds[0]
+                || Math.min(vertices[v], Math.min(vertices[v + 3], vertices[v + 6])) >= bounds[3]
+                || Math.max(vertices[v + 2], Math.max(vertices[v + 5], vertices[v + 8])) <= bounds[2]
+                || Math.min(vertices[v + 2], Math.min(vertices[v + 5], vertices[v + 8])) >= bounds[5]) {
+            return false;
+        }
+        //the edge normals of the triangle
+        float centerX = (bounds[0] + bounds[3]) * 0.5f;
+        float centerZ = (bounds[2] + bounds[5]) * 0.5f;
+        float extentX = (bounds[3] - bounds[0]) * 0.5f;
+        float extentZ = (bounds[5] - bounds[2]) * 0.5f;
+        for (int i = 0; i < 3; i++) {
+            int a = v + i * 3;
+            int b = v + ((i + 1) % 3) * 3;
+            float normalX = vertices[b + 2] - vertices[a + 2];
+            float normalZ = vertices[a] - vertices[b];
+            float low = Float.MAX_VALUE, high = -Float.MAX_VALUE;
+            for (int j = 0; j < 3; j++) {
+                float projection = vertices[v + j * 3] * normalX + vertices[v + j * 3 + 2] * normalZ;
+                low = Math.min(low, projection);
+                high = Math.max(high, projection);
+            }
+            float center = centerX * normalX + centerZ * normalZ;
+            float radius = extentX * Math.abs(normalX) + extentZ * Math.abs(normalZ);
+            if (high <= center - radius || low >= center + radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import java.util.List;
+
+/**
+ * The data of all cells of a NavMesh that the queries need, packed by cell
+ * index into flat primitive arrays. Walking the mesh in A* and the closest
+ * cell search reads neighbouring array entries instead of following the
+ * Cell, Vector3f and Line2D objects of each cell around the heap. The Cell
+ * objects stay the public API, getCell() maps an index back to its Cell, so
+ * the arrays take memory on top of the Cells (about 110 bytes per cell,
+ * a Cell with its vectors and lines retains about 640).
+ * Immutable once built, it has to be rebuilt whenever the cells change.
+ * Cells blocked by obstacles are only changed by creating a copy with new
+ * blocked flags that shares all other arrays.
+ *
+ * @author normenhansen
+ */
+class PackedCells {
+
+    private final Cell[] cells;
+    /**
+     * index of the linked cell for each side, -1 for solid walls
+     */
+    private final int[] links;
+    /**
+     * x, y, z of the center of each cell
+     */
+    private final float[] centers;
+    /**
+     * the distances between the wall midpoints, like Cell.getWallLength()
+     */
+    private final float[] wallLengths;
+    /**
+     * normal x, y, z and constant of the plane of each cell
+     */
+    private final float[] planes;
+    /**
+     * point A x, z and normal x, z of the three sides of each cell
+     */
+    private final float[] sides;
+    /**
+     * cells covered by obstacles, path finding does not pass through them
+     */
+    private final boolean[] blocked;
+
+    PackedCells(List<Cell> cellList) {
+        int count = cellList.size();
+        cells = cellList.toArray(new Cell[count]);
+        links = new int[count * 3];
+        centers = new float[count * 3];
+        wallLengths = new float[count * 3];
+        planes = new float[count * 4];
+        sides = new float[count * 12];
+        blocked = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            Cell cell = cells[i];
+            Vector3f center = cell.getCenter();
+            centers[i * 3] = center.x;
+            centers[i * 3 + 1] = center.y;
+            centers[i * 3 + 2] = center.z;
+            Plane plane = cell.getPlane();
+            planes[i * 4] = plane.getNormal().x;
+            planes[i * 4 + 1] = plane.getNormal().y;
+            planes[i * 4 + 2] = plane.getNormal().z;
+            planes[i * 4 + 3] = plane.getConstant();
+            for (int side = 0; side < 3; side++) {
+                Cell link = cell.getLink(side);
+                links[i * 3 + side] = link == null ? -1 : link.getIndex();
+                wallLengths[i * 3 + side] = cell.getWallLength(side);
+                Line2D wall = cell.getWall(side);
+                Vector2f normal = wall.getNormal();
+                int s = i * 12 + side * 4;
+                sides[s] = wall.getPointA().x;
+                sides[s + 1] = wall.getPointA().y;
+                sides[s + 2] = normal.x;
+                sides[s + 3] = normal.y;
+            }
+        }
+    }
+
+    /**
+     * creates a copy of the cells with the given blocked flags
+     */
+    PackedCells(PackedCells cells, boolean[] blocked) {
+        this.cells = cells.cells;
+        this.links = cells.links;
+        this.centers = cells.centers;
+        this.wallLengths = cells.wallLengths;
+        this.planes = cells.planes;
+        this.sides = cells.sides;
+        this.blocked = blocked;
+    }
+
+    int getCellCount() {
+        return cells.length;
+    }
+
+    Cell getCell(int index) {
+        return cells[index];
+    }
+
+    /**
+     * @return the index of the cell linked on the side or -1
+     */
+    int getLink(int index, int side) {
+        return links[index * 3 + side];
+    }
+
+    /**
+     * @return the index of the cell linked on the side or -1 if there is no
+     * link or the linked cell is blocked
+     */
+    int getPassableLink(int index, int side) {
+        int link = links[index * 3 + side];
+        return link >= 0 && !blocked[link] ? link : -1;
+    }
+
+    boolean isBlocked(int index) {
+        return blocked[index];
+    }
+
+    /**
+     * @return a copy of the blocked flags of all cells
+     */
+    boolean[] copyBlocked() {
+        return blocked.clone();
+    }
+
+    float getWallLength(int index, int side) {
+        return wallLengths[index * 3 + side];
+    }
+
+    /**
+     * @return the distance from the point to the center of the cell,
+     * computed like Vector3f.distance()
+     */
+    float getCenterDistance(int index, Vector3f point) {
+        double dx = point.x - centers[index * 3];
+        double dy = point.y - centers[index * 3 + 1];
+        double dz = point.z - centers[index * 3 + 2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * same as Cell.contains(x, z)
+     */
+    boolean contains(int index, float x, float z) {
+        int s = index * 12;
+        for (int i = 0; i < 3; i++, s += 4) {
+            if ((x - sides[s]) * sides[s + 2] + (z - sides[s + 1]) * sides[s + 3] < -1.0e-6f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * same as Cell.getHeightOnCell(x, z)
+     */
+    float getHeightOnCell(int index, float x, float z) {
+        int p = index * 4;
+        return (-(planes[p] * x + planes[p + 2] * z - planes[p + 3]) / planes[p + 1]);
+    }
+
+    /**
+     * same as Cell.distanceSquared(x, y, z)
+     */
+    float distanceSquared(int index, float x, float y, float z) {
+        float closestX = x;
+        float closestZ = z;
+        if (!contains(index, x, z)) {
+            float closestDistance = Float.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                int a = index * 12 + i * 4;
+                int b = index * 12 + ((i + 1) % 3) * 4;
+                float dirX = sides[b] - sides[a];
+                float dirZ = sides[b + 1] - sides[a + 1];
+                float lengthSquared = dirX * dirX + dirZ * dirZ;
+                float t = lengthSquared > 0 ? ((x - sides[a]) * dirX + (z - sides[a + 1]) * dirZ) / lengthSquared : 0;
+                t = t < 0 ? 0 : (t > 1 ? 1 : t);
+                float pointX = sides[a] + dirX * t;
+                float pointZ = sides[a + 1] + dirZ * t;
+                float distance = (x - pointX) * (x - pointX) + (z - pointZ) * (z - pointZ);
+                if (distance < closestDistance) {
+                    closestDistance = distance;
+                    closestX = pointX;
+                    closestZ = pointZ;
+                }
+            }
+        }
+        float dx = x - closestX;
+        float dy = y - getHeightOnCell(index, closestX, closestZ);
+        float dz = z - closestZ;
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
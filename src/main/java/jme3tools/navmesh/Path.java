@@ -55,6 +55,12 @@ public class Path implements Iterable<Waypoint> {
     private Waypoint start = new Waypoint();
     private Waypoint end = new Waypoint();
     private ArrayList<Waypoint> waypointList = new ArrayList<Waypoint>();
+    /**
+     * waypoints created by this path, reused when the path is initialized
+     * again
+     */
+    private ArrayList<Waypoint> waypointPool = new ArrayList<Waypoint>();
+    private int usedWaypoints = 0;
 
     /**
      * Sets up a new path from StartPoint to EndPoint. It adds the StartPoint as
@@ -72,6 +78,7 @@ public class Path implements Iterable<Waypoint> {
                            Vector3f endPoint, Cell endCell) {
 
         waypointList.clear();
+        usedWaypoints = 0;
 
         this.owner = parent;
 
@@ -107,6 +114,25 @@ public class Path implements Iterable<Waypoint> {
         waypointList.add(newPoint);
     }
 
+    /**
+     * Adds a new waypoint to the end of the list, the waypoint and its
+     * position are reused from previous uses of this path.
+     */
+    public void addWaypoint(float x, float y, float z, Cell cell) {
+        Waypoint newPoint;
+        if (usedWaypoints < waypointPool.size()) {
+            newPoint = waypointPool.get(usedWaypoints);
+            newPoint.getPosition().set(x, y, z);
+        } else {
+            newPoint = new Waypoint();
+            newPoint.setPosition(new Vector3f(x, y, z));
+            waypointPool.add(newPoint);
+        }
+        usedWaypoints++;
+        newPoint.setCell(cell);
+        waypointList.add(newPoint);
+    }
+
     /**
      * Caps the end of the waypoint list by adding our final destination point.
      */
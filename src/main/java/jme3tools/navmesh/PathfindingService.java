@@ -0,0 +1,137 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes paths on a NavMesh on a pool of worker threads. The returned
+ * futures can be polled from the update loop, the Path of a finished future
+ * belongs to the caller. The mesh must not be changed while queries are
+ * running.
+ *
+ * @author normenhansen
+ */
+public class PathfindingService {
+
+    private final NavMesh navMesh;
+    private final int threads;
+    private ExecutorService executor;
+
+    public PathfindingService(NavMesh navMesh, int threads) {
+        this.navMesh = navMesh;
+        this.threads = Math.max(threads, 1);
+    }
+
+    public NavMesh getNavMesh() {
+        return navMesh;
+    }
+
+    /**
+     * Finds a path from start to goal on a worker thread.
+     *
+     * @param start
+     * @param goal
+     * @param entityRadius
+     * @return a future that returns the path or null if no path was found
+     */
+    public Future<Path> findPath(Vector3f start, Vector3f goal, final float entityRadius) {
+        final Vector3f startPos = start.clone();
+        final Vector3f goalPos = goal.clone();
+        return getExecutor().submit(new Callable<Path>() {
+
+            public Path call() throws Exception {
+                return computePath(startPos, goalPos, entityRadius);
+            }
+        });
+    }
+
+    /**
+     * Finds a path from start to goal on the calling thread, the positions
+     * are projected on the mesh the same way NavMeshPathfinder does. Goals
+     * in other clusters are routed on the cluster graph like
+     * NavMeshPathfinder.computePath(), but the path through all clusters is
+     * built at once instead of one cluster at a time while moving.
+     *
+     * @return the path or null if no path was found
+     */
+    public Path computePath(Vector3f start, Vector3f goal, float entityRadius) {
+        Vector3f startPos = new Vector3f(start.x, 0, start.z);
+        Cell startCell = navMesh.findClosestCell(startPos);
+        Vector3f goalPos = new Vector3f(goal.x, 0, goal.z);
+        Cell goalCell = navMesh.findClosestCell(goalPos);
+        if (startCell == null || goalCell == null) {
+            return null;
+        }
+        navMesh.snapPointToCell(startCell, startPos);
+        startPos.y = start.y;
+        List<Cell> route = new ArrayList<Cell>();
+        if (!navMesh.findClusterRoute(startCell, goalCell, route)) {
+            return null;
+        }
+        Path path = new Path();
+        if (route.isEmpty()) {
+            if (!navMesh.buildNavigationPath(path, startCell, startPos, goalCell, goal.clone(), entityRadius)) {
+                return null;
+            }
+            return path;
+        }
+        //join the paths to each cluster entrance and from the last one to the goal
+        path.initialize(navMesh, startPos, startCell, goal.clone(), goalCell);
+        Path segment = new Path();
+        Cell segmentCell = startCell;
+        Vector3f segmentStart = startPos;
+        for (int i = 0; i <= route.size(); i++) {
+            boolean last = i == route.size();
+            Cell segmentEndCell = last ? goalCell : route.get(i);
+            Vector3f segmentEnd = last ? goal.clone() : segmentEndCell.getCenter().clone();
+            if (!navMesh.buildNavigationPath(segment, segmentCell, segmentStart, segmentEndCell, segmentEnd, entityRadius)) {
+                return null;
+            }
+            //the start of each segment is the end of the previous one, the
+            //end of the last segment is added by finishPath()
+            List<Path.Waypoint> waypoints = segment.getWaypoints();
+            int count = last ? waypoints.size() - 1 : waypoints.size();
+            for (int j = 1; j < count; j++) {
+                Path.Waypoint waypoint = waypoints.get(j);
+                path.addWaypoint(waypoint.getPosition().clone(), waypoint.getCell());
+            }
+            segmentCell = segmentEndCell;
+            segmentStart = segmentEnd;
+        }
+        path.finishPath();
+        return path;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Pathfinding-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * stops the worker threads, pending queries are cancelled
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the registration of sync objects and which messages are applied to
+ * them.
+ * @author normenhansen
+ */
+public class PhysicsSyncManagerTest {
+
+    @Test
+    public void testReAddUnderNewIdDropsOldId() {
+        PhysicsSyncManager syncManager = new PhysicsSyncManager(null, (com.jme3.network.Server) null);
+        IdAllocator idAllocator = new IdAllocator();
+        long oldId = idAllocator.allocate();
+        long newId = idAllocator.allocate();
+        int[] object = new int[1];
+        syncManager.addObject(oldId, object);
+        syncManager.addObject(newId, object);
+
+        syncManager.doMessage(new CountMessage(oldId));
+        assertEquals(0, object[0]);
+        syncManager.doMessage(new CountMessage(newId));
+        assertEquals(1, object[0]);
+
+        //removing the object by reference removes the new id
+        syncManager.removeObject(object);
+        assertNull(syncManager.syncObjects.get(oldId));
+        assertNull(syncManager.syncObjects.get(newId));
+    }
+
+    @Test
+    public void testReAddUnderSameId() {
+        PhysicsSyncManager syncManager = new PhysicsSyncManager(null, (com.jme3.network.Server) null);
+        long id = new IdAllocator().allocate();
+        int[] object = new int[1];
+        syncManager.addObject(id, object);
+        syncManager.addObject(id, object);
+
+        syncManager.doMessage(new CountMessage(id));
+        assertEquals(1, object[0]);
+    }
+
+    /**
+     * message that counts how often it was applied to its object
+     */
+    private static class CountMessage extends PhysicsSyncMessage {
+
+        CountMessage(long id) {
+            super(id);
+        }
+
+        @Override
+        public void applyData(Object object) {
+            ((int[]) object)[0]++;
+        }
+    }
+}
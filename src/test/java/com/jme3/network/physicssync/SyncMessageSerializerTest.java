@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Round trips random messages through the SyncMessageSerializer and checks
+ * the quantization error against the bounds of the encoding.
+ * @author normenhansen
+ */
+public class SyncMessageSerializerTest {
+
+    private static final Vector3f WORLD_MIN = new Vector3f(-256, -64, -256);
+    private static final Vector3f WORLD_MAX = new Vector3f(256, 192, 256);
+    private static final float MAX_LINEAR_VELOCITY = 128;
+    private static final float MAX_ANGULAR_VELOCITY = 64;
+    private static final float MAX_WALK_DIRECTION = 4;
+    /**
+     * 16 bit fixed point rounds to the nearest of 65536 steps over the range
+     */
+    private static final float FIXED_POINT_ERROR = 0.5f / 65535;
+    /**
+     * the three smallest components use 10 bits over +-sqrt(0.5) each, the
+     * rotation angle error stays below 0.25 degrees
+     */
+    private static final float MAX_ROTATION_ERROR = 0.25f * FastMath.DEG_TO_RAD;
+    private static final int RUNS = 10000;
+    private final SyncMessageSerializer serializer = new SyncMessageSerializer();
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    @BeforeClass
+    public static void setUpClass() {
+        SyncMessageSerializer.setWorldBounds(WORLD_MIN, WORLD_MAX);
+        SyncMessageSerializer.setMaxVelocity(MAX_LINEAR_VELOCITY, MAX_ANGULAR_VELOCITY);
+        SyncMessageSerializer.setMaxWalkDirection(MAX_WALK_DIRECTION);
+        Serializer.registerClass(SyncRigidBodyMessage.class, new SyncMessageSerializer());
+        Serializer.registerClass(SyncCharacterMessage.class, new SyncMessageSerializer());
+    }
+
+    @Test
+    public void testRigidBodyRoundTrip() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < RUNS; i++) {
+            SyncRigidBodyMessage message = randomRigidBodyMessage(random);
+            SyncRigidBodyMessage result = roundTrip(message, SyncRigidBodyMessage.class);
+            assertEquals(message.syncId, result.syncId);
+            assertEquals(message.time, result.time, 0);
+            assertVector(message.location, result.location, WORLD_MIN, WORLD_MAX);
+            assertVector(message.linearVelocity, result.linearVelocity, MAX_LINEAR_VELOCITY);
+            assertVector(message.angularVelocity, result.angularVelocity, MAX_ANGULAR_VELOCITY);
+            assertRotation(message, result);
+        }
+    }
+
+    @Test
+    public void testCharacterRoundTrip() throws Exception {
+        Random random = new Random(2);
+        for (int i = 0; i < RUNS; i++) {
+            SyncCharacterMessage message = randomCharacterMessage(random);
+            SyncCharacterMessage result = roundTrip(message, SyncCharacterMessage.class);
+            assertEquals(message.syncId, result.syncId);
+            assertEquals(message.time, result.time, 0);
+            assertVector(message.location, result.location, WORLD_MIN, WORLD_MAX);
+            assertVector(message.walkDirection, result.walkDirection, MAX_WALK_DIRECTION);
+            assertVector(message.viewDirection, result.viewDirection, 1);
+        }
+    }
+
+    @Test
+    public void testValuesOutsideRangeAreClamped() throws Exception {
+        SyncCharacterMessage message = new SyncCharacterMessage();
+        message.location.set(1000, -1000, 0);
+        message.walkDirection.set(10, -10, 0);
+        SyncCharacterMessage result = roundTrip(message, SyncCharacterMessage.class);
+        assertEquals(WORLD_MAX.x, result.location.x, 0.001f);
+        assertEquals(WORLD_MIN.y, result.location.y, 0.001f);
+        assertEquals(MAX_WALK_DIRECTION, result.walkDirection.x, 0.001f);
+        assertEquals(-MAX_WALK_DIRECTION, result.walkDirection.y, 0.001f);
+    }
+
+    @Test
+    public void testQuantizeMatchesRoundTrip() throws Exception {
+        Random random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            SyncRigidBodyMessage message = randomRigidBodyMessage(random);
+            SyncRigidBodyMessage result = roundTrip(message, SyncRigidBodyMessage.class);
+            SyncMessageSerializer.quantize(message);
+            assertEquals(result.location, message.location);
+            assertEquals(result.linearVelocity, message.linearVelocity);
+            assertEquals(result.angularVelocity, message.angularVelocity);
+        }
+    }
+
+    @Test
+    public void testMessageSize() throws Exception {
+        SyncRigidBodyMessage rigidBody = randomRigidBodyMessage(new Random(4));
+        //id and time, location 3x2, rotation 4, velocities 2x3x2
+        assertEquals(8 + 8 + 6 + 4 + 12, write(serializer, rigidBody));
+        SyncCharacterMessage character = randomCharacterMessage(new Random(5));
+        //id and time, location, walk and view direction 3x3x2
+        assertEquals(8 + 8 + 18, write(serializer, character));
+
+        FieldSerializer fieldSerializer = new FieldSerializer();
+        fieldSerializer.initialize(SyncRigidBodyMessage.class);
+        int fieldSize = write(fieldSerializer, rigidBody);
+        int size = write(serializer, rigidBody);
+        assertTrue("field serializer " + fieldSize + " bytes, sync serializer " + size + " bytes", 2 * size < fieldSize);
+    }
+
+    private int write(Serializer serializer, Object message) throws Exception {
+        buffer.clear();
+        serializer.writeObject(buffer, message);
+        return buffer.position();
+    }
+
+    private <T> T roundTrip(PhysicsSyncMessage message, Class<T> type) throws Exception {
+        buffer.clear();
+        serializer.writeObject(buffer, message);
+        buffer.flip();
+        T result = serializer.readObject(buffer, type);
+        assertFalse(buffer.hasRemaining());
+        return result;
+    }
+
+    private static SyncRigidBodyMessage randomRigidBodyMessage(Random random) {
+        float[] state = new float[SyncRigidBodyMessage.STATE_SIZE];
+        randomVector(random, WORLD_MIN, WORLD_MAX, state, 0);
+        Quaternion rotation = new Quaternion(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1,
+                random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1).normalizeLocal();
+        state[3] = rotation.getX();
+        state[4] = rotation.getY();
+        state[5] = rotation.getZ();
+        state[6] = rotation.getW();
+        randomVector(random, MAX_LINEAR_VELOCITY, state, 7);
+        randomVector(random, MAX_ANGULAR_VELOCITY, state, 10);
+        SyncRigidBodyMessage message = new SyncRigidBodyMessage(random.nextLong(), state);
+        message.time = random.nextDouble() * 1000;
+        return message;
+    }
+
+    private static SyncCharacterMessage randomCharacterMessage(Random random) {
+        float[] state = new float[SyncCharacterMessage.STATE_SIZE];
+        randomVector(random, WORLD_MIN, WORLD_MAX, state, 0);
+        randomVector(random, MAX_WALK_DIRECTION, state, 3);
+        randomVector(random, 1, state, 6);
+        SyncCharacterMessage message = new SyncCharacterMessage(random.nextLong(), state);
+        message.time = random.nextDouble() * 1000;
+        return message;
+    }
+
+    private static void randomVector(Random random, Vector3f min, Vector3f max, float[] store, int offset) {
+        store[offset] = min.x + random.nextFloat() * (max.x - min.x);
+        store[offset + 1] = min.y + random.nextFloat() * (max.y - min.y);
+        store[offset + 2] = min.z + random.nextFloat() * (max.z - min.z);
+    }
+
+    private static void randomVector(Random random, float range, float[] store, int offset) {
+        randomVector(random, new Vector3f(-range, -range, -range), new Vector3f(range, range, range), store, offset);
+    }
+
+    private static void assertVector(Vector3f expected, Vector3f actual, Vector3f min, Vector3f max) {
+        //allow for the float rounding of the range and the value
+        assertEquals(expected.x, actual.x, FIXED_POINT_ERROR * (max.x - min.x) * 1.01f);
+        assertEquals(expected.y, actual.y, FIXED_POINT_ERROR * (max.y - min.y) * 1.01f);
+        assertEquals(expected.z, actual.z, FIXED_POINT_ERROR * (max.z - min.z) * 1.01f);
+    }
+
+    private static void assertVector(Vector3f expected, Vector3f actual, float range) {
+        assertVector(expected, actual, new Vector3f(-range, -range, -range), new Vector3f(range, range, range));
+    }
+
+    private static void assertRotation(SyncRigidBodyMessage expected, SyncRigidBodyMessage actual) {
+        Quaternion a = new Quaternion().fromRotationMatrix(expected.rotation);
+        Quaternion b = new Quaternion().fromRotationMatrix(actual.rotation);
+        float dot = FastMath.abs(a.dot(b)) / FastMath.sqrt(a.norm() * b.norm());
+        float angle = 2 * FastMath.acos(Math.min(dot, 1));
+        assertTrue("rotation error " + angle * FastMath.RAD_TO_DEG + " degrees", angle <= MAX_ROTATION_ERROR);
+    }
+}
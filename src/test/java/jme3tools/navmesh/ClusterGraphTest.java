@@ -0,0 +1,95 @@
+package jme3tools.navmesh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a cluster graph updated after cells were blocked or unblocked
+ * finds the same routes as a graph built from scratch.
+ *
+ * @author normenhansen
+ */
+public class ClusterGraphTest {
+
+    private static final int STEPS = 30;
+    private static final int QUERIES = 200;
+
+    @Test
+    public void testUpdateMatchesFullBuild() {
+        NavMesh mesh = new NavMesh();
+        FunnelTest.addQuads(mesh, 0, 0, 24, 24);
+        mesh.linkCells();
+        List<Cell> cellList = new ArrayList<Cell>();
+        for (int i = 0; i < mesh.getNumCells(); i++) {
+            cellList.add(mesh.getCell(i));
+        }
+        PackedCells cells = new PackedCells(cellList);
+        ClusterGraph graph = new ClusterGraph(cells, 8);
+        Random random = new Random(1);
+        boolean[] blocked = new boolean[cells.getCellCount()];
+        for (int step = 0; step < STEPS; step++) {
+            //block or unblock a small square of cells like an obstacle does
+            int x = random.nextInt(22);
+            int z = random.nextInt(22);
+            boolean flag = random.nextInt(3) != 0;
+            for (int i = 0; i < cellList.size(); i++) {
+                Cell cell = cellList.get(i);
+                float cellX = cell.getCenter().x / 2;
+                float cellZ = cell.getCenter().z / 2;
+                if (cellX >= x && cellX < x + 3 && cellZ >= z && cellZ < z + 3) {
+                    blocked[i] = flag;
+                }
+            }
+            cells = new PackedCells(cells, blocked.clone());
+            graph = new ClusterGraph(graph, cells);
+            ClusterGraph fullGraph = new ClusterGraph(cells, 8);
+            assertEquals(fullGraph.getNodeCount(), graph.getNodeCount());
+            assertSameRoutes(cellList, fullGraph, graph, random);
+        }
+    }
+
+    @Test
+    public void testUpdateOpensRoute() {
+        NavMesh mesh = new NavMesh();
+        FunnelTest.addQuads(mesh, 0, 0, 20, 2);
+        mesh.linkCells();
+        List<Cell> cellList = new ArrayList<Cell>();
+        for (int i = 0; i < mesh.getNumCells(); i++) {
+            cellList.add(mesh.getCell(i));
+        }
+        PackedCells cells = new PackedCells(cellList);
+        ClusterGraph graph = new ClusterGraph(cells, 8);
+        Cell start = cellList.get(0);
+        Cell goal = cellList.get(cellList.size() - 1);
+        //a wall across the corridor at the border of the first cluster
+        boolean[] blocked = new boolean[cells.getCellCount()];
+        for (int i = 0; i < cellList.size(); i++) {
+            float x = cellList.get(i).getCenter().x;
+            if (x > 8 && x < 10) {
+                blocked[i] = true;
+            }
+        }
+        graph = new ClusterGraph(graph, new PackedCells(cells, blocked));
+        assertFalse(graph.findRoute(start, goal, new ArrayList<Cell>()));
+        graph = new ClusterGraph(graph, new PackedCells(cells, new boolean[cells.getCellCount()]));
+        List<Cell> route = new ArrayList<Cell>();
+        assertTrue(graph.findRoute(start, goal, route));
+        assertFalse(route.isEmpty());
+    }
+
+    private static void assertSameRoutes(List<Cell> cellList, ClusterGraph expected, ClusterGraph actual, Random random) {
+        List<Cell> expectedRoute = new ArrayList<Cell>();
+        List<Cell> actualRoute = new ArrayList<Cell>();
+        for (int i = 0; i < QUERIES; i++) {
+            Cell start = cellList.get(random.nextInt(cellList.size()));
+            Cell goal = cellList.get(random.nextInt(cellList.size()));
+            expectedRoute.clear();
+            actualRoute.clear();
+            assertEquals(expected.findRoute(start, goal, expectedRoute), actual.findRoute(start, goal, actualRoute));
+            assertEquals(expectedRoute, actualRoute);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the waypoints of the funnel string pulling on corridors made of
+ * square quads of two cells each.
+ *
+ * @author normenhansen
+ */
+public class FunnelTest {
+
+    private static final float QUAD_SIZE = 2;
+    private static final float EPSILON = 1.0e-4f;
+
+    @Test
+    public void testStraightCorridor() {
+        NavMesh mesh = new NavMesh();
+        addQuads(mesh, 0, 0, 10, 1);
+        mesh.linkCells();
+        List<Vector3f> path = buildPath(mesh, new Vector3f(1, 0, 1), new Vector3f(19, 0, 1), 0);
+        assertEquals(2, path.size());
+        assertPoint(1, 1, path.get(0));
+        assertPoint(19, 1, path.get(1));
+    }
+
+    @Test
+    public void testStraightDiagonal() {
+        NavMesh mesh = new NavMesh();
+        addQuads(mesh, 0, 0, 10, 1);
+        mesh.linkCells();
+        List<Vector3f> path = buildPath(mesh, new Vector3f(0.5f, 0, 0.5f), new Vector3f(19.5f, 0, 1.5f), 0);
+        assertEquals(2, path.size());
+    }
+
+    @Test
+    public void testSingleCorner() {
+        NavMesh mesh = createCornerMesh();
+        List<Vector3f> path = buildPath(mesh, new Vector3f(1, 0, 1), new Vector3f(9, 0, 11), 0);
+        assertEquals(3, path.size());
+        assertPoint(1, 1, path.get(0));
+        assertPoint(8, 2, path.get(1));
+        assertPoint(9, 11, path.get(2));
+    }
+
+    @Test
+    public void testCornerIsOffsetByEntityRadius() {
+        NavMesh mesh = createCornerMesh();
+        float radius = 0.5f;
+        List<Vector3f> path = buildPath(mesh, new Vector3f(1, 0, 1), new Vector3f(9, 0, 11), radius);
+        assertTrue(path.size() >= 3);
+        assertPoint(1, 1, path.get(0));
+        assertPoint(9, 11, path.get(path.size() - 1));
+        //each portal at the inner corner is narrowed by the radius, so the
+        //path goes around the corner at that distance
+        for (int i = 1; i < path.size() - 1; i++) {
+            Vector3f corner = path.get(i);
+            assertEquals(radius, corner.distance(new Vector3f(8, 0, 2)), EPSILON);
+            assertTrue(corner.x >= 8 - EPSILON);
+            assertTrue(corner.z <= 2 + EPSILON);
+        }
+    }
+
+    @Test
+    public void testNarrowPortalsUseMidpoints() {
+        NavMesh mesh = new NavMesh();
+        addQuads(mesh, 0, 0, 10, 1);
+        mesh.linkCells();
+        //the corridor is narrower than the entity, the path follows its middle
+        List<Vector3f> path = buildPath(mesh, new Vector3f(1, 0, 0.5f), new Vector3f(19, 0, 0.5f), 1.5f);
+        assertPoint(1, 0.5f, path.get(0));
+        assertPoint(19, 0.5f, path.get(path.size() - 1));
+        for (int i = 1; i < path.size() - 1; i++) {
+            assertEquals(1, path.get(i).z, EPSILON);
+        }
+    }
+
+    /**
+     * an L shaped corridor along x and then along z, the inner corner is at
+     * x = 8, z = 2
+     */
+    private static NavMesh createCornerMesh() {
+        NavMesh mesh = new NavMesh();
+        addQuads(mesh, 0, 0, 5, 1);
+        addQuads(mesh, 4, 1, 1, 5);
+        mesh.linkCells();
+        return mesh;
+    }
+
+    private static List<Vector3f> buildPath(NavMesh mesh, Vector3f start, Vector3f end, float radius) {
+        Path path = new Path();
+        assertTrue(mesh.buildNavigationPath(path, mesh.findClosestCell(start), start,
+                mesh.findClosestCell(end), end, radius));
+        List<Vector3f> points = new ArrayList<Vector3f>();
+        for (Path.Waypoint waypoint : path) {
+            assertEquals(0, waypoint.getPosition().y, EPSILON);
+            points.add(waypoint.getPosition().clone());
+        }
+        return points;
+    }
+
+    private static void assertPoint(float x, float z, Vector3f point) {
+        assertEquals(x, point.x, EPSILON);
+        assertEquals(z, point.z, EPSILON);
+    }
+
+    /**
+     * adds the quads of a rectangle of width * depth quads starting at the
+     * given quad
+     */
+    static void addQuads(NavMesh mesh, int startX, int startZ, int width, int depth) {
+        for (int x = startX; x < startX + width; x++) {
+            for (int z = startZ; z < startZ + depth; z++) {
+                Vector3f p00 = new Vector3f(x * QUAD_SIZE, 0, z * QUAD_SIZE);
+                Vector3f p10 = new Vector3f((x + 1) * QUAD_SIZE, 0, z * QUAD_SIZE);
+                Vector3f p01 = new Vector3f(x * QUAD_SIZE, 0, (z + 1) * QUAD_SIZE);
+                Vector3f p11 = new Vector3f((x + 1) * QUAD_SIZE, 0, (z + 1) * QUAD_SIZE);
+                addCell(mesh, p00, p10, p01);
+                addCell(mesh, p10, p11, p01);
+            }
+        }
+    }
+
+    /**
+     * adds the cell with its vertices in the clockwise order the NavMesh
+     * expects
+     */
+    private static void addCell(NavMesh mesh, Vector3f a, Vector3f b, Vector3f c) {
+        float cross = (b.x - a.x) * (c.z - a.z) - (b.z - a.z) * (c.x - a.x);
+        if (cross < 0) {
+            mesh.addCell(a, b, c);
+        } else {
+            mesh.addCell(a, c, b);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.lang.management.ManagementFactory;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that moving an entity on the mesh with onMove does not allocate,
+ * measured with the allocation counter of the thread.
+ *
+ * @author normenhansen
+ */
+public class NavMeshPathfinderAllocationTest {
+
+    private static final int MOVES = 20000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void testOnMoveDoesNotAllocate() {
+        assertEquals(0, measureMoves(true));
+    }
+
+    @Test
+    public void testOnMoveWithoutStoreDoesNotAllocate() {
+        assertEquals(0, measureMoves(false));
+    }
+
+    /**
+     * @return the lowest number of bytes allocated in one round of moves
+     */
+    private static long measureMoves(boolean useStore) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        NavMesh mesh = new NavMesh();
+        FunnelTest.addQuads(mesh, 0, 0, 10, 10);
+        mesh.linkCells();
+        NavMeshPathfinder pathfinder = new NavMeshPathfinder(mesh);
+        pathfinder.warp(new Vector3f(10, 0, 10));
+        Vector3f store = useStore ? new Vector3f() : null;
+        //goes back and forth across the cells, runs into the border of the
+        //mesh and slides along it
+        Vector3f[] moves = new Vector3f[20];
+        for (int i = 0; i < 10; i++) {
+            moves[i] = new Vector3f(1.5f, 0, 0.5f);
+            moves[i + 10] = new Vector3f(-1.5f, 0, -0.6f);
+        }
+        moves[19] = Vector3f.ZERO;
+
+        //warm up so the measured moves do not include class loading
+        move(pathfinder, moves, store);
+        long threadId = Thread.currentThread().getId();
+        threads.getThreadAllocatedBytes(threadId);
+        //the JIT can allocate a few bytes on the thread while compiling,
+        //garbage from onMove would show up in every round
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            move(pathfinder, moves, store);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(threadId) - before);
+        }
+        return allocated;
+    }
+
+    /**
+     * @param store the vector for onMove(Vector3f, Vector3f) or null to use
+     * onMove(Vector3f)
+     */
+    private static void move(NavMeshPathfinder pathfinder, Vector3f[] moves, Vector3f store) {
+        for (int i = 0; i < MOVES; i++) {
+            Vector3f move = moves[i % moves.length];
+            pathfinder.setPosition(store != null ? pathfinder.onMove(move, store) : pathfinder.onMove(move));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks which cells obstacles block on a corridor of large cells and that
+ * paths are still found around small obstacles.
+ *
+ * @author normenhansen
+ */
+public class NavMeshTilesTest {
+
+    private static final float CELL_SIZE = 10;
+    private static final long TIMEOUT = 5000;
+    private static final float EPSILON = 1.0e-4f;
+
+    @Test
+    public void testPathAroundSmallObstacle() throws InterruptedException {
+        NavMesh mesh = createCorridor();
+        NavMeshTiles tiles = new NavMeshTiles(mesh, 20);
+        //a small box at the border of the corridor in the middle quad, it
+        //overlaps one of its cells but covers neither its center nor most of
+        //its area
+        tiles.addObstacle(1, new Vector3f(24.5f, -1, 0.5f), new Vector3f(25.5f, 1, 1.5f));
+        waitForUpdate(tiles);
+        Vector3f start = new Vector3f(5, 0, 5);
+        Vector3f goal = new Vector3f(45, 0, 5);
+        Path path = new PathfindingService(mesh, 1).computePath(start, goal, 0);
+        assertNotNull(path);
+        //the corridor is straight so the path is too, it passes the obstacle
+        //on the other side of the corridor
+        assertEquals(2, path.size());
+        assertEquals(goal.z, path.getLast().getPosition().z, EPSILON);
+        tiles.shutdown();
+    }
+
+    @Test
+    public void testObstacleBlocksCoveredCells() throws InterruptedException {
+        NavMesh mesh = createCorridor();
+        NavMeshTiles tiles = new NavMeshTiles(mesh, 20);
+        Vector3f start = new Vector3f(5, 0, 5);
+        Vector3f goal = new Vector3f(45, 0, 5);
+        //covers the middle quad, the corridor is cut
+        tiles.addObstacle(1, new Vector3f(19, -1, -1), new Vector3f(31, 1, 11));
+        waitForUpdate(tiles);
+        assertNull(new PathfindingService(mesh, 1).computePath(start, goal, 0));
+
+        //covers more than half of the cell of the middle quad that links to
+        //the left, but not its center
+        tiles.addObstacle(1, new Vector3f(19, -1, -1), new Vector3f(31, 1, 3));
+        waitForUpdate(tiles);
+        assertNull(new PathfindingService(mesh, 1).computePath(start, goal, 0));
+
+        tiles.removeObstacle(1);
+        waitForUpdate(tiles);
+        assertNotNull(new PathfindingService(mesh, 1).computePath(start, goal, 0));
+        tiles.shutdown();
+    }
+
+    /**
+     * @return a corridor of five quads in a row, each split into two cells
+     */
+    private static NavMesh createCorridor() {
+        NavMesh mesh = new NavMesh();
+        for (int x = 0; x < 5; x++) {
+            Vector3f p00 = new Vector3f(x * CELL_SIZE, 0, 0);
+            Vector3f p10 = new Vector3f(x * CELL_SIZE + CELL_SIZE, 0, 0);
+            Vector3f p01 = new Vector3f(x * CELL_SIZE, 0, CELL_SIZE);
+            Vector3f p11 = new Vector3f(x * CELL_SIZE + CELL_SIZE, 0, CELL_SIZE);
+            mesh.addCell(p00, p01, p10);
+            mesh.addCell(p10, p01, p11);
+        }
+        mesh.linkCells();
+        //one cluster, the route does not depend on the cluster graph update
+        mesh.setClusterSize(100);
+        return mesh;
+    }
+
+    private static void waitForUpdate(NavMeshTiles tiles) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (tiles.isUpdatePending()) {
+            assertTrue(System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the paths of the PathfindingService follow the cluster route
+ * like the paths of NavMeshPathfinder.
+ *
+ * @author normenhansen
+ */
+public class PathfindingServiceTest {
+
+    private static final float EPSILON = 1.0e-4f;
+
+    @Test
+    public void testPathThroughClusters() {
+        NavMesh mesh = new NavMesh();
+        FunnelTest.addQuads(mesh, 0, 0, 20, 2);
+        mesh.linkCells();
+        mesh.setClusterSize(8);
+        Vector3f start = new Vector3f(1, 0, 1);
+        Vector3f goal = new Vector3f(39, 0, 3);
+        List<Cell> route = new ArrayList<Cell>();
+        assertTrue(mesh.findClusterRoute(mesh.findClosestCell(start), mesh.findClosestCell(goal), route));
+        assertFalse(route.isEmpty());
+
+        Path path = new PathfindingService(mesh, 1).computePath(start, goal, 0);
+        assertNotNull(path);
+        List<Path.Waypoint> waypoints = path.getWaypoints();
+        assertPoint(start, path.getFirst().getPosition());
+        assertPoint(goal, path.getLast().getPosition());
+        assertSame(path.getEnd(), path.getLast());
+        //each cluster entrance is passed in the order of the route
+        int next = 0;
+        for (Path.Waypoint waypoint : waypoints) {
+            if (next < route.size() && waypoint.getPosition().distance(route.get(next).getCenter()) < EPSILON) {
+                assertSame(route.get(next), waypoint.getCell());
+                next++;
+            }
+        }
+        assertEquals(route.size(), next);
+        //the path goes straight towards the goal without coming back
+        for (int i = 1; i < waypoints.size(); i++) {
+            assertTrue(waypoints.get(i).getPosition().x >= waypoints.get(i - 1).getPosition().x - EPSILON);
+        }
+    }
+
+    @Test
+    public void testPathInOneCluster() {
+        NavMesh mesh = new NavMesh();
+        FunnelTest.addQuads(mesh, 0, 0, 10, 1);
+        mesh.linkCells();
+        Vector3f start = new Vector3f(1, 0, 1);
+        Vector3f goal = new Vector3f(19, 0, 1);
+
+        Path path = new PathfindingService(mesh, 1).computePath(start, goal, 0);
+        assertNotNull(path);
+        assertEquals(2, path.size());
+        assertPoint(goal, path.getLast().getPosition());
+    }
+
+    private static void assertPoint(Vector3f expected, Vector3f actual) {
+        assertEquals(expected.x, actual.x, EPSILON);
+        assertEquals(expected.z, actual.z, EPSILON);
+    }
+}